@@ -0,0 +1,137 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * Built-in aggregate functions which can be used in accumulate and roll columns instead of user-defined functions.
+ * An aggregate is computed from a state of several double values which is updated by adding facts (and removing them if the aggregate is invertible) and merging states of disjoint subsets of facts.
+ * Null values of facts (NaN) are ignored. Aggregates of empty subsets are 0 for sum and count and null (NaN) for others.
+ * A state is stored in the cells [offset, offset+getStateSize()) of an array and a zero-filled state represents an empty subset.
+ */
+public enum Aggregate {
+
+    SUM(2, true), // State: count, sum
+
+    COUNT(1, true), // Number of non-null values. State: count
+
+    MEAN(2, true), // State: count, sum
+
+    MIN(2, false), // State: count, minimum
+
+    MAX(2, false), // State: count, maximum
+
+    VARIANCE(3, true), // Sample variance. State: count, mean, sum of squared deviations from the mean (Welford)
+
+    FIRST(2, false), // Value of the fact with the smallest id. State: count, value
+
+    LAST(2, false), // Value of the fact with the largest id. State: count, value
+    ;
+
+    private int stateSize;
+    public int getStateSize() {
+        return this.stateSize;
+    }
+
+    // Whether facts can be removed from the state (otherwise the aggregate has to be recomputed from the remaining facts)
+    private boolean invertible;
+    public boolean isInvertible() {
+        return this.invertible;
+    }
+
+    public void add(double[] state, int offset, double value) {
+        if(Double.isNaN(value)) return;
+        double n = state[offset];
+        state[offset] = n + 1;
+        switch(this) {
+            case SUM: case MEAN:
+                state[offset+1] += value;
+                break;
+            case MIN:
+                if(n == 0 || value < state[offset+1]) state[offset+1] = value;
+                break;
+            case MAX:
+                if(n == 0 || value > state[offset+1]) state[offset+1] = value;
+                break;
+            case VARIANCE:
+                double delta = value - state[offset+1];
+                state[offset+1] += delta / (n + 1);
+                state[offset+2] += delta * (value - state[offset+1]);
+                break;
+            case FIRST:
+                if(n == 0) state[offset+1] = value;
+                break;
+            case LAST:
+                state[offset+1] = value;
+                break;
+        }
+    }
+
+    public void remove(double[] state, int offset, double value) {
+        if(Double.isNaN(value)) return;
+        if(!this.invertible) {
+            throw new BistroException(BistroErrorCode.EVALUATION_ERROR, "Aggregate is not invertible.", "Values cannot be removed from aggregate " + this.name() + ".");
+        }
+        double n = state[offset] - 1;
+        if(n <= 0) { // Empty
+            for(int i = 0; i < this.stateSize; i++) state[offset+i] = 0.0;
+            return;
+        }
+        state[offset] = n;
+        switch(this) {
+            case SUM: case MEAN:
+                state[offset+1] -= value;
+                break;
+            case VARIANCE:
+                double mean = state[offset+1];
+                double newMean = mean - (value - mean) / n;
+                state[offset+2] -= (value - mean) * (value - newMean);
+                state[offset+1] = newMean;
+                break;
+        }
+    }
+
+    // Update the first state by adding all facts of the second state. Facts of the first state are supposed to have smaller ids
+    public void merge(double[] state, int offset, double[] other, int otherOffset) {
+        double n1 = state[offset];
+        double n2 = other[otherOffset];
+        if(n2 == 0) return;
+        if(n1 == 0) {
+            System.arraycopy(other, otherOffset, state, offset, this.stateSize);
+            return;
+        }
+        state[offset] = n1 + n2;
+        switch(this) {
+            case SUM: case MEAN:
+                state[offset+1] += other[otherOffset+1];
+                break;
+            case MIN:
+                state[offset+1] = Math.min(state[offset+1], other[otherOffset+1]);
+                break;
+            case MAX:
+                state[offset+1] = Math.max(state[offset+1], other[otherOffset+1]);
+                break;
+            case VARIANCE:
+                double delta = other[otherOffset+1] - state[offset+1];
+                state[offset+1] += delta * n2 / (n1 + n2);
+                state[offset+2] += other[otherOffset+2] + delta * delta * n1 * n2 / (n1 + n2);
+                break;
+            case LAST:
+                state[offset+1] = other[otherOffset+1];
+                break;
+        }
+    }
+
+    public double getResult(double[] state, int offset) {
+        double n = state[offset];
+        switch(this) {
+            case SUM: return n == 0 ? 0.0 : state[offset+1];
+            case COUNT: return n;
+            case MEAN: return n == 0 ? Double.NaN : state[offset+1] / n;
+            case VARIANCE: return n < 2 ? Double.NaN : state[offset+2] / (n - 1);
+            default: return n == 0 ? Double.NaN : state[offset+1];
+        }
+    }
+
+    private Aggregate(int stateSize, boolean invertible) {
+        this.stateSize = stateSize;
+        this.invertible = invertible;
+    }
+}
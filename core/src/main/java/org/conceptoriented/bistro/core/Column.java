@@ -1,9 +1,13 @@
 package org.conceptoriented.bistro.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import org.conceptoriented.bistro.core.operations.*;
 
@@ -25,6 +29,7 @@ public class Column implements Element {
     }
     public void setName(String name) {
         this.name = name;
+        this.schema.invalidateCatalog();
     }
 
     private Table input;
@@ -33,13 +38,27 @@ public class Column implements Element {
     }
     public void setInput(Table table) {
         this.input = table;
+        this.schema.invalidateCatalog();
+        this.schema.updateTopology(this);
     }
 
     private Table output;
     public Table getOutput() {
         return this.output;
     }
-    public void setOutput(Table table) { this.output = table; this.getData().setValue(null); }
+    public void setOutput(Table table) {
+        this.output = table;
+
+        // Storage depends on the output type so the data is re-created (with the same default value) only if the new type needs another storage
+        Range range = this.input.getData().getIdRange();
+        ColumnData newData = this.createData(range.start, range.end);
+        if(newData.getClass() != this.data.getClass()) {
+            newData.setDefaultValue(this.data.getDefaultValue());
+            this.data = newData;
+        }
+        this.data.setValue(); // Values of the old type are not valid anymore
+        this.schema.updateTopology(this);
+    }
 
     //
     // Data
@@ -49,6 +68,78 @@ public class Column implements Element {
     public ColumnData getData() { return this.data; }
     public void setData(ColumnData data) { this.data = data; }
 
+    // Storage of this column overriding the storage of the table and schema
+    private StorageProvider storageProvider;
+    public StorageProvider getStorageProvider() {
+        if(this.storageProvider != null) return this.storageProvider;
+        return this.input.getStorageProvider();
+    }
+    public void setStorageProvider(StorageProvider storageProvider) {
+        this.storageProvider = storageProvider;
+        this.updateStorage();
+    }
+    boolean hasStorageProvider() {
+        return this.storageProvider != null;
+    }
+    void updateStorage() { // Existing data is copied to the new storage by retaining its ids
+        ColumnData oldData = this.data;
+        Range range = oldData.getIdRange();
+        ColumnData newData = this.createData(range.start, range.end);
+
+        newData.setDefaultValue(oldData.getDefaultValue());
+        copyData(oldData, newData, range, (this.output != null && this.output.isPrimitive()) ? this.output.getName() : "Object");
+        newData.resetChanged();
+        if(oldData.isChanged()) newData.setChanged();
+        oldData.getChangedRanges().forEach(x -> newData.setChanged(x));
+        newData.setChangedAt(oldData.getChangedAt());
+
+        this.data = newData;
+    }
+
+    // Values of primitive types are copied in blocks without boxing
+    private static void copyData(ColumnData from, ColumnData to, Range range, String type) {
+        int blockSize = 1024;
+        if(type.equalsIgnoreCase("Double")) {
+            double[] values = new double[blockSize];
+            for(long start = range.start; start < range.end; start += blockSize) {
+                int length = (int)Math.min(blockSize, range.end - start);
+                from.getDoubles(start, values, length);
+                to.setDoubles(start, values, length);
+            }
+        }
+        else if(type.equalsIgnoreCase("Long")) {
+            long[] values = new long[blockSize];
+            for(long start = range.start; start < range.end; start += blockSize) {
+                int length = (int)Math.min(blockSize, range.end - start);
+                from.getLongs(start, values, length);
+                to.setLongs(start, values, length);
+                for(int k = 0; k < length; k++) { // Valid values equal to the special value of nulls
+                    if(values[k] == Long.MIN_VALUE && !from.isNull(start + k)) to.setValue(start + k, values[k]);
+                }
+            }
+        }
+        else if(type.equalsIgnoreCase("Integer")) {
+            int[] values = new int[blockSize];
+            for(long start = range.start; start < range.end; start += blockSize) {
+                int length = (int)Math.min(blockSize, range.end - start);
+                from.getInts(start, values, length);
+                to.setInts(start, values, length);
+                for(int k = 0; k < length; k++) {
+                    if(values[k] == Integer.MIN_VALUE && !from.isNull(start + k)) to.setValue(start + k, values[k]);
+                }
+            }
+        }
+        else {
+            for(long id = range.start; id < range.end; id++) {
+                to.setValue(id, from.getValue(id));
+            }
+        }
+    }
+
+    protected ColumnData createData(long start, long end) {
+        return this.getStorageProvider().createColumnData(this, start, end);
+    }
+
     //
     // Element interface
     //
@@ -81,33 +172,23 @@ public class Column implements Element {
     }
     @Override
     public boolean hasDependency(Element element) {
-        for(Element dep : this.getDependencies()) {
+        return hasDependency(this, element, new HashSet<>());
+    }
+    static boolean hasDependency(Element elem, Element element, Set<Element> visited) { // Each element is visited only once (shared dependencies are not traversed again)
+        for(Element dep : elem.getDependencies()) {
             if(dep == element) return true;
-            if(dep.hasDependency(element)) return true; // Recursion
+            if(visited.add(dep) && hasDependency(dep, element, visited)) return true; // Recursion
         }
         return false;
     }
 
     @Override
-    public List<Element> getDependents() {
-        List<Element> cols = schema.getColumns().stream().filter(x -> x.getDependencies().contains(this)).collect(Collectors.<Element>toList());
-        List<Element> tabs = schema.getTables().stream().filter(x -> x.getDependencies().contains(this)).collect(Collectors.<Element>toList());
-
-        List<Element> ret = new ArrayList<>();
-        ret.addAll(cols);
-        for(Element d : tabs) {
-            if(!ret.contains(d)) ret.add(d);
-        }
-
-        return ret;
+    public List<Element> getDependents() { // Reverse edges are maintained by the schema topology
+        return new ArrayList<>(this.schema.topology.getDependents(this));
     }
     @Override
     public boolean hasDependents(Element element) {
-        for(Element dep : this.getDependents()) {
-            if(dep == element) return true;
-            if(dep.hasDependents(element)) return true;// Recursion
-        }
-        return false;
+        return this.schema.topology.hasDownstream(this, Collections.singleton(element));
     }
 
     private List<BistroException> errors = new ArrayList<>();
@@ -118,11 +199,14 @@ public class Column implements Element {
 
     @Override
     public boolean hasErrorsDeep() {
-        if(errors.size() > 0) return true; // Check this element
+        return hasErrorsDeep(this, new HashSet<>());
+    }
+    static boolean hasErrorsDeep(Element elem, Set<Element> visited) { // Visited elements are known to have no errors
+        if(elem.getErrors().size() > 0) return true; // Check this element
 
         // Otherwise check errors in dependencies (recursively)
-        for(Element dep : this.getDependencies()) {
-            if(dep.hasErrorsDeep()) return true;
+        for(Element dep : elem.getDependencies()) {
+            if(visited.add(dep) && hasErrorsDeep(dep, visited)) return true;
         }
 
         return false;
@@ -130,6 +214,9 @@ public class Column implements Element {
 
     @Override
     public boolean isDirty() {
+        return this.isDirty(new HashMap<>());
+    }
+    boolean isDirty(Map<Element, Boolean> visited) { // Dirtiness of already visited dependencies is reused
 
         // Definition has changed
         if(this.operation != null) {
@@ -147,11 +234,21 @@ public class Column implements Element {
                 if(((Table)dep).getData().getChangedAt()  > thisChangedAt) return true;
             }
 
-            if(dep.isDirty()) return true; // Recursion
+            if(isDirty(dep, visited)) return true; // Recursion
         }
 
         return false;
     }
+    static boolean isDirty(Element elem, Map<Element, Boolean> visited) {
+        Boolean dirty = visited.get(elem);
+        if(dirty == null) {
+            if(elem instanceof Column) dirty = ((Column)elem).isDirty(visited);
+            else if(elem instanceof Table) dirty = ((Table)elem).isDirty(visited);
+            else dirty = elem.isDirty();
+            visited.put(elem, dirty);
+        }
+        return dirty;
+    }
 
     @Override
     public void evaluate() { // Evaluate only this individual column if possible
@@ -188,8 +285,17 @@ public class Column implements Element {
         //
         // Really evaluate
         //
+        this.evaluateOperation();
+    }
+
+    void evaluateOperation() { // Evaluate without checking dependencies (they are checked by the caller)
+        if(this.operation == null) {
+            return;
+        }
+
         try {
             this.operation.evaluate();
+            this.getData().setChangedAt(System.nanoTime()); // Data is up-to-date with the definition and the dependencies so next evaluations can be incremental
         }
         catch(BistroException e) {
             this.errors.add(e);
@@ -197,7 +303,6 @@ public class Column implements Element {
         catch(Exception e) {
             this.errors.add( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error evaluating column.") );
         }
-
     }
 
     //
@@ -214,14 +319,20 @@ public class Column implements Element {
         this.errors.clear();
         this.definitionChangedAt = System.nanoTime();
 
+        if(this.getOperationType() == OperationType.PROJECT || (operation != null && operation.getOperationType() == OperationType.PROJECT)) {
+            this.output.definitionChangedAt = this.definitionChangedAt; // Project columns define the population of their output table
+        }
+
         this.operation = operation;
 
         this.key = false;
 
-        if(this.hasDependency(this)) {
+        if(this.schema.topology.isCyclic(this, this.getDependencies())) { // New dependencies must not be downstream elements
             this.noop(false); // Reset definition because of failure to set new operation
             throw new BistroException(BistroErrorCode.DEFINITION_ERROR, "Cyclic dependency.", "This column depends on itself directly or indirectly.");
         }
+
+        this.schema.updateTopology(this);
     }
 
     @Override
@@ -237,7 +348,7 @@ public class Column implements Element {
         return true;
     }
 
-    protected long definitionChangedAt; // Time of latest change
+    protected volatile long definitionChangedAt; // Time of latest change (volatile because elements are evaluated by parallel workers)
     public long getDefinitionChangedAt() {
         return this.definitionChangedAt;
     }
@@ -257,7 +368,8 @@ public class Column implements Element {
         Operation op = null;
         this.setOperation(op);
 
-        this.key = isKey; // TODO: We need to validate the topology (dependencies) after such change
+        this.key = isKey;
+        this.schema.updateTopology(this); // Dependencies of key columns and product tables depend on it
 
         // TODO: Should we reset the data?
     }
@@ -276,6 +388,16 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    public void calculate(EvalCalculateBlock lambda, ColumnPath... paths) {
+        Operation op = new OpCalculate(this, lambda, paths);
+        this.setOperation(op);
+    }
+
+    public void calculate(EvalCalculateBlock lambda, Column... columns) {
+        Operation op = new OpCalculate(this, lambda, columns);
+        this.setOperation(op);
+    }
+
     //
     // Link column
     //
@@ -337,6 +459,27 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    public void accumulate(ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, EvalMerge merger, ColumnPath... paths) {
+        Operation op = new OpAccumulate(this, groupPath, adder, remover, merger, paths);
+        this.setOperation(op);
+    }
+
+    public void accumulate(Column groupColumn, EvalAccumulate adder, EvalAccumulate remover, EvalMerge merger, Column... columns) {
+        Operation op = new OpAccumulate(this, groupColumn, adder, remover, merger, columns);
+        this.setOperation(op);
+    }
+
+    // Built-in aggregate of the values of the path (column) for each group
+    public void accumulate(ColumnPath groupPath, Aggregate aggregate, ColumnPath path) {
+        Operation op = new OpAccumulate(this, groupPath, aggregate, path);
+        this.setOperation(op);
+    }
+
+    public void accumulate(Column groupColumn, Aggregate aggregate, Column column) {
+        Operation op = new OpAccumulate(this, groupColumn, aggregate, column);
+        this.setOperation(op);
+    }
+
     //
     // Rolling column
     //
@@ -361,6 +504,49 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    // The remover is an inverse of the adder. The window is then moved incrementally by removing old elements (with their distance from the new row) and adding new elements
+    // Elements which remain in the window are not added again for the next row, so sliding works only for adders which ignore the distance (weights are not updated)
+    public void roll(int sizePast, int sizeFuture, EvalRoll adder, EvalRoll remover, ColumnPath... paths) {
+        Operation op = new OpRoll(this, null, sizePast, sizeFuture, adder, remover, paths);
+        this.setOperation(op);
+    }
+
+    public void roll(int sizePast, int sizeFuture, EvalRoll adder, EvalRoll remover, Column... columns) {
+        Operation op = new OpRoll(this, null, sizePast, sizeFuture, adder, remover, columns);
+        this.setOperation(op);
+    }
+
+    public void roll(ColumnPath distancePath, int sizePast, int sizeFuture, EvalRoll adder, EvalRoll remover, ColumnPath... paths) {
+        Operation op = new OpRoll(this, distancePath, sizePast, sizeFuture, adder, remover, paths);
+        this.setOperation(op);
+    }
+
+    public void roll(Column distanceColumn, int sizePast, int sizeFuture, EvalRoll adder, EvalRoll remover, Column... columns) {
+        Operation op = new OpRoll(this, distanceColumn, sizePast, sizeFuture, adder, remover, columns);
+        this.setOperation(op);
+    }
+
+    // Built-in aggregate of the values of the path (column) for each window (the distance is used only to determine the window)
+    public void roll(int sizePast, int sizeFuture, Aggregate aggregate, ColumnPath path) {
+        Operation op = new OpRoll(this, (ColumnPath)null, sizePast, sizeFuture, aggregate, path);
+        this.setOperation(op);
+    }
+
+    public void roll(int sizePast, int sizeFuture, Aggregate aggregate, Column column) {
+        Operation op = new OpRoll(this, (Column)null, sizePast, sizeFuture, aggregate, column);
+        this.setOperation(op);
+    }
+
+    public void roll(ColumnPath distancePath, int sizePast, int sizeFuture, Aggregate aggregate, ColumnPath path) {
+        Operation op = new OpRoll(this, distancePath, sizePast, sizeFuture, aggregate, path);
+        this.setOperation(op);
+    }
+
+    public void roll(Column distanceColumn, int sizePast, int sizeFuture, Aggregate aggregate, Column column) {
+        Operation op = new OpRoll(this, distanceColumn, sizePast, sizeFuture, aggregate, column);
+        this.setOperation(op);
+    }
+
     //
     // Serialization and construction
     //
@@ -382,6 +568,11 @@ public class Column implements Element {
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        return this.id.hashCode();
+    }
+
     public Column(Schema schema, String name, Table input, Table output) {
         this.schema = schema;
         this.id = UUID.randomUUID();
@@ -390,6 +581,6 @@ public class Column implements Element {
         this.output = output;
 
         // Where its output values are stored
-        this.data = new org.conceptoriented.bistro.core.data.ColumnDataImpl(this.input.getData().getIdRange().start, this.input.getData().getIdRange().end);
+        this.data = this.createData(this.input.getData().getIdRange().start, this.input.getData().getIdRange().end);
     }
 }
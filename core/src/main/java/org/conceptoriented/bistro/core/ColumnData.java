@@ -1,5 +1,7 @@
 package org.conceptoriented.bistro.core;
 
+import java.util.List;
+
 public interface ColumnData {
 
     //
@@ -17,10 +19,94 @@ public interface ColumnData {
     public Object getDefaultValue();
     public void setDefaultValue(Object value);
 
+    //
+    // Typed output values
+    //
+
+    // Implementations storing primitive values override these methods so that they can be used in loops without boxing
+    // Null is returned as NaN for double and as the minimum value for long and int
+    public default double getDouble(long id) {
+        Object value = this.getValue(id);
+        return value == null ? Double.NaN : ((Number)value).doubleValue();
+    }
+    public default void setDouble(long id, double value) { this.setValue(id, value); }
+
+    public default long getLong(long id) {
+        Object value = this.getValue(id);
+        return value == null ? Long.MIN_VALUE : ((Number)value).longValue();
+    }
+    public default void setLong(long id, long value) { this.setValue(id, value); }
+
+    public default int getInt(long id) {
+        Object value = this.getValue(id);
+        return value == null ? Integer.MIN_VALUE : ((Number)value).intValue();
+    }
+    public default void setInt(long id, int value) { this.setValue(id, value); }
+
+    // Block access to the outputs of consecutive ids [start, start+length) stored in (or taken from) the beginning of the array (null is NaN)
+    public default void getDoubles(long start, double[] values, int length) {
+        for(int k = 0; k < length; k++) values[k] = this.getDouble(start + k);
+    }
+    public default void setDoubles(long start, double[] values, int length) {
+        for(int k = 0; k < length; k++) {
+            if(Double.isNaN(values[k])) this.setValue(start + k, null);
+            else this.setDouble(start + k, values[k]);
+        }
+    }
+    public default void getLongs(long start, long[] values, int length) {
+        for(int k = 0; k < length; k++) values[k] = this.getLong(start + k);
+    }
+    public default void setLongs(long start, long[] values, int length) {
+        for(int k = 0; k < length; k++) this.setLong(start + k, values[k]);
+    }
+    public default void getInts(long start, int[] values, int length) {
+        for(int k = 0; k < length; k++) values[k] = this.getInt(start + k);
+    }
+    public default void setInts(long start, int[] values, int length) {
+        for(int k = 0; k < length; k++) this.setInt(start + k, values[k]);
+    }
+    public default void setValues(long start, Object[] values, int length) {
+        for(int k = 0; k < length; k++) this.setValue(start + k, values[k]);
+    }
+
+    //
+    // Nulls
+    //
+
+    // Implementations storing primitive values override these methods using a validity bitmap so that nulls are checked, counted and skipped without boxing
+    public default boolean isNull(long id) { return this.getValue(id) == null; }
+    public default void setNull(long id) { this.setValue(id, null); }
+    public default void setNull(Range range) { this.setValue(range, null); }
+
+    public default long countNulls(Range range) {
+        long count = 0;
+        for(long id = range.start; id < range.end; id++) {
+            if(this.isNull(id)) count++;
+        }
+        return count;
+    }
+
+    // First id in [from, to) with null output or 'to' if there is no such id
+    public default long nextNull(long from, long to) {
+        for(long id = from; id < to; id++) {
+            if(this.isNull(id)) return id;
+        }
+        return to;
+    }
+
+    // First id in [from, to) with non-null output or 'to' if there is no such id
+    public default long nextValid(long from, long to) {
+        for(long id = from; id < to; id++) {
+            if(!this.isNull(id)) return id;
+        }
+        return to;
+    }
+
     //
     // Input range
     //
 
+    public Range getIdRange(); // Ids for which outputs are physically stored (can include ids already removed from the table)
     public void add();
     public void add(long count); // Remove the oldest records with lowest ids
     public void remove();
@@ -29,8 +115,17 @@ public interface ColumnData {
     public void reset(long start, long end);
     public void gc();
 
-    public long findSorted(Object value);
-    public long findSortedFromStart(Object value);
+    //
+    // Search in sorted values
+    //
+
+    // Values must be sorted (e.g., time stamps or range borders) and can have duplicates. Nulls are treated as greater than any value (e.g., values of newly added records which have not been set yet).
+    // All methods use binary search over the physically stored ids (which can include ids already removed from the table)
+    public long findSorted(Object value); // First id with this value or (-insertionId-1) if not found
+    public long findSortedFromStart(Object value); // First id with the value greater than or equal to the specified value (same as lower bound)
+    public long findSortedLower(Object value); // First id with the value greater than or equal to the specified value (end of the range if none)
+    public long findSortedUpper(Object value); // First id with the value strictly greater than the specified value (end of the range if none)
+    public Range findSortedRange(Object from, Object to); // Ids with values in [from, to). Null bound means no bound.
 
     //
     // Tracking changes (delta)
@@ -45,4 +140,10 @@ public interface ColumnData {
     public boolean isChanged();
     public void setChanged();
     public void resetChanged(); // Forget the changes. Normally after evaluation of all dependents.
+
+    // In-place changes of existing records can be registered for ranges of ids instead of setting the flag
+    // Dependents will then re-evaluate only these records (in addition to newly added records)
+    public void setChanged(long id);
+    public void setChanged(Range range);
+    public List<Range> getChangedRanges(); // Disjoint ranges of ids with changes (sorted) or empty list
 }
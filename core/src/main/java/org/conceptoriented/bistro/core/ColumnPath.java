@@ -29,6 +29,97 @@ public class ColumnPath {
         return out;
     }
 
+    // Output of the path as double (null is NaN). Values of the last segment are read without boxing
+    public double getDouble(long id) {
+        int len = this.columns.size();
+        long out = id;
+        for(int i = 0; i < len - 1; i++) {
+            Object next = this.columns.get(i).getData().getValue(out);
+            if(next == null || (long)next < 0) return Double.NaN; // Invalid id in an intermediate segment
+            out = (long)next;
+        }
+        return this.columns.get(len - 1).getData().getDouble(out);
+    }
+
+    // Output of the path as long (null is the minimum value). Values of the last segment are read without boxing
+    public long getLong(long id) {
+        int len = this.columns.size();
+        long out = id;
+        for(int i = 0; i < len - 1; i++) {
+            Object next = this.columns.get(i).getData().getValue(out);
+            if(next == null || (long)next < 0) return Long.MIN_VALUE; // Invalid id in an intermediate segment
+            out = (long)next;
+        }
+        return this.columns.get(len - 1).getData().getLong(out);
+    }
+
+    //
+    // Gather outputs for blocks of consecutive input ids
+    //
+
+    // Resolve input ids [start, start+length) through the specified number of first segments into the id vector.
+    // The first segment is read as one block and each next segment is one pass over the vector. Ids which become invalid (null or negative output) are marked by -1 once and skipped by next segments
+    protected void gather(long start, long[] ids, int length, int segments) {
+        if(segments == 0) {
+            for(int k = 0; k < length; k++) ids[k] = start + k;
+            return;
+        }
+        this.columns.get(0).getData().getLongs(start, ids, length); // Null is the minimum value
+        for(int k = 0; k < length; k++) {
+            if(ids[k] < 0) ids[k] = -1;
+        }
+        for(int i = 1; i < segments; i++) {
+            ColumnData data = this.columns.get(i).getData();
+            for(int k = 0; k < length; k++) {
+                if(ids[k] < 0) continue;
+                long out = data.getLong(ids[k]);
+                ids[k] = out < 0 ? -1 : out;
+            }
+        }
+    }
+
+    // Outputs of the path for consecutive input ids [start, start+length) as ids (-1 if some segment has null or invalid output)
+    public void getLongs(long start, long[] values, int length) {
+        this.gather(start, values, length, this.columns.size());
+    }
+
+    // Outputs of the path for consecutive input ids [start, start+length).
+    // In contrast to getValue, which returns an invalid intermediate output (like -1) as is, the output is null if some intermediate segment has null or invalid output
+    public void getValues(long start, Object[] values, int length) {
+        this.getValues(start, values, length, this.columns.size() > 1 ? new long[length] : null);
+    }
+    // The ids buffer (at least of the block length) is used for intermediate ids so that it can be reused by the caller for all blocks
+    public void getValues(long start, Object[] values, int length, long[] ids) {
+        int last = this.columns.size() - 1;
+        ColumnData data = this.columns.get(last).getData();
+        if(last == 0) {
+            for(int k = 0; k < length; k++) values[k] = data.getValue(start + k);
+            return;
+        }
+        this.gather(start, ids, length, last);
+        for(int k = 0; k < length; k++) {
+            values[k] = ids[k] < 0 ? null : data.getValue(ids[k]);
+        }
+    }
+
+    // Outputs of the path for consecutive input ids [start, start+length) as doubles (NaN for null and if some intermediate segment has null or invalid output)
+    public void getDoubles(long start, double[] values, int length) {
+        this.getDoubles(start, values, length, this.columns.size() > 1 ? new long[length] : null);
+    }
+    // The ids buffer (at least of the block length) is used for intermediate ids so that it can be reused by the caller for all blocks
+    public void getDoubles(long start, double[] values, int length, long[] ids) {
+        int last = this.columns.size() - 1;
+        ColumnData data = this.columns.get(last).getData();
+        if(last == 0) {
+            data.getDoubles(start, values, length);
+            return;
+        }
+        this.gather(start, ids, length, last);
+        for(int k = 0; k < length; k++) {
+            values[k] = ids[k] < 0 ? Double.NaN : data.getDouble(ids[k]);
+        }
+    }
+
     // Skip first segment and use the argument is its output
     public Object getValueSkipFirst(Object firstOutput) {
         int len = this.columns.size();
@@ -77,6 +168,34 @@ public class ColumnPath {
         return columns;
     }
 
+    // Ranges of input ids of the paths whose values have been changed in place or null if changes cannot be restricted to some ids
+    // Changes in first segments are registered for the input ids themselves while changes in other segments can influence any input id
+    public static List<Range> getChangedRanges(List<ColumnPath> paths) {
+        List<Range> ranges = new ArrayList<>();
+
+        for(ColumnPath path : paths) {
+            for(int i = 0; i < path.columns.size(); i++) {
+                ColumnData data = path.columns.get(i).getData();
+                if(data.isChanged()) return null;
+                List<Range> changed = data.getChangedRanges();
+                if(changed.isEmpty()) continue;
+                if(i > 0) return null;
+                ranges.addAll(changed);
+            }
+        }
+
+        // Merge overlapping ranges of different paths
+        ranges.sort((a, b) -> Long.compare(a.start, b.start));
+        List<Range> merged = new ArrayList<>();
+        for(Range range : ranges) {
+            Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if(last != null && range.start <= last.end) last.end = Math.max(last.end, range.end);
+            else merged.add(new Range(range));
+        }
+
+        return merged;
+    }
+
     public static ColumnPath create(NamePath namePath, Table table) {
         ColumnPath path = new ColumnPath();
         for(String name : namePath.names) {
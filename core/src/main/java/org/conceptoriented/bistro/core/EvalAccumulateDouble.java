@@ -0,0 +1,20 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * This methods knows how to update a double aggregate given a fact (group member) described by its double parameters.
+ * Values are passed without boxing if the function is used in operations. Null values are represented by NaN.
+ */
+@FunctionalInterface
+public interface EvalAccumulateDouble extends EvalAccumulate {
+    public double evaluate(double aggregate, double[] params) throws BistroException;
+
+    @Override
+    public default Object evaluate(Object aggregate, Object[] params) throws BistroException {
+        double[] values = new double[params.length];
+        for(int i = 0; i < params.length; i++) {
+            values[i] = params[i] == null ? Double.NaN : ((Number)params[i]).doubleValue();
+        }
+        double result = this.evaluate(aggregate == null ? Double.NaN : ((Number)aggregate).doubleValue(), values);
+        return Double.isNaN(result) ? null : result;
+    }
+}
@@ -0,0 +1,10 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * This method knows how to compute output values for a block of consecutive inputs given the values of each parameter as an array.
+ * The first length elements of the arrays are used. Null values are represented by NaN in the input and output arrays.
+ */
+@FunctionalInterface
+public interface EvalCalculateBlock {
+    public void evaluate(double[][] params, double[] results, int length) throws BistroException;
+}
@@ -0,0 +1,20 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * This method knows how to compute one double output value given several double input values as an array.
+ * Values are passed without boxing if the function is used in operations. Null values are represented by NaN.
+ */
+@FunctionalInterface
+public interface EvalCalculateDouble extends EvalCalculate {
+    public double evaluate(double[] params) throws BistroException;
+
+    @Override
+    public default Object evaluate(Object[] params) throws BistroException {
+        double[] values = new double[params.length];
+        for(int i = 0; i < params.length; i++) {
+            values[i] = params[i] == null ? Double.NaN : ((Number)params[i]).doubleValue();
+        }
+        double result = this.evaluate(values);
+        return Double.isNaN(result) ? null : result;
+    }
+}
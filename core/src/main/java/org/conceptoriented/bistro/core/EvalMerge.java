@@ -0,0 +1,10 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * This methods knows how to combine two aggregates computed for disjoint subsets of facts of one group.
+ * The default value of the column has to be the initial (neutral) aggregate for an empty subset.
+ */
+@FunctionalInterface
+public interface EvalMerge {
+    public Object merge(Object aggregate1, Object aggregate2) throws BistroException;
+}
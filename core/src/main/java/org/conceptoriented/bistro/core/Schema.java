@@ -1,8 +1,15 @@
 package org.conceptoriented.bistro.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 public class Schema {
@@ -20,6 +27,19 @@ public class Schema {
         this.name = name;
     }
 
+    //
+    // Storage
+    //
+
+    // Default storage of all tables and columns
+    private StorageProvider storageProvider = new org.conceptoriented.bistro.core.data.StorageProviderImpl();
+    public StorageProvider getStorageProvider() {
+        return this.storageProvider;
+    }
+    public void setStorageProvider(StorageProvider storageProvider) { // It is used for new elements (existing elements are not changed)
+        this.storageProvider = storageProvider;
+    }
+
     //
     // Tables
     //
@@ -29,20 +49,25 @@ public class Schema {
         return this.tables;
     }
     public Table getTable(String table) {
-        Table ret = this.tables.stream().filter(x -> x.getName().equals(table)).findAny().orElse(null);
-        return ret;
+        return this.getCatalog().tables.get(table);
     }
     public Table getTableById(String id) {
-        Table ret = this.tables.stream().filter(x -> x.getId().toString().equals(id)).findAny().orElse(null);
-        return ret;
+        Element ret = this.getCatalog().ids.get(id);
+        return ret instanceof Table ? (Table)ret : null;
     }
 
     public Table createTable(String name) {
+        return this.createTable(name, false);
+    }
+    public Table createTable(String name, boolean offHeap) { // Numeric columns of an off-heap table will store their data outside of the heap
         Table tab = this.getTable(name);
         if(tab != null) return tab; // Already exists
 
-        tab = new Table(this, name);
+        tab = new Table(this, name, offHeap);
         this.tables.add(tab);
+        this.invalidateCatalog();
+        this.topology.add(tab);
+        this.topologyChangedAt = System.nanoTime();
         return tab;
     }
     public void deleteTable(Table tab) {
@@ -56,6 +81,12 @@ public class Schema {
 
         // Remove table itself
         this.tables.remove(tab);
+        this.invalidateCatalog();
+
+        inColumns.forEach(x -> this.topology.remove(x));
+        outColumns.forEach(x -> this.topology.remove(x));
+        this.topology.remove(tab);
+        this.topologyChangedAt = System.nanoTime();
     }
 
     //
@@ -66,25 +97,22 @@ public class Schema {
     public List<Column> getColumns() {
         return this.columns;
     }
-    public List<Column> getColumns(Table table) {
-        List<Column> res = this.columns.stream().filter(x -> x.getInput().equals(table)).collect(Collectors.<Column>toList());
-        return res;
+    public List<Column> getColumns(Table table) { // The list is cached and cannot be modified
+        return this.getCatalog().columns.getOrDefault(table, Collections.emptyList());
     }
     public List<Column> getColumns(String table) {
-        List<Column> res = this.columns.stream().filter(x -> x.getInput().getName().equals(table)).collect(Collectors.<Column>toList());
-        return res;
+        return this.getColumns(this.getTable(table));
     }
     public Column getColumn(Table table, String column) {
-        Column ret = this.columns.stream().filter(x -> x.getInput().equals(table) && x.getName().equals(column)).findAny().orElse(null);
-        return ret;
+        Map<String, Column> cols = this.getCatalog().columnNames.get(table);
+        return cols != null ? cols.get(column) : null;
     }
     public Column getColumn(String table, String column) {
-        Column ret = this.columns.stream().filter(x -> x.getInput().getName().equals(table) && x.getName().equals(column)).findAny().orElse(null);
-        return ret;
+        return this.getColumn(this.getTable(table), column);
     }
     public Column getColumnById(String id) {
-        Column ret = this.columns.stream().filter(x -> x.getId().toString().equals(id)).findAny().orElse(null);
-        return ret;
+        Element ret = this.getCatalog().ids.get(id);
+        return ret instanceof Column ? (Column)ret : null;
     }
 
     public Column createColumn(String name, Table  input) {
@@ -96,6 +124,9 @@ public class Schema {
         }
         Column col = new Column(this, name, input, output);
         this.columns.add(col);
+        this.invalidateCatalog();
+        this.topology.add(col);
+        this.topologyChangedAt = System.nanoTime();
         return col;
     }
     public Column createColumn(String name, String input) {
@@ -107,68 +138,99 @@ public class Schema {
         }
         Column col = new Column(this, name, this.getTable(input), this.getTable(output));
         this.columns.add(col);
+        this.invalidateCatalog();
+        this.topology.add(col);
+        this.topologyChangedAt = System.nanoTime();
         return col;
     }
     public void deleteColumn(Column col) {
         this.columns.remove(col);
+        this.invalidateCatalog();
+        this.topology.remove(col);
+        this.topologyChangedAt = System.nanoTime();
+    }
+
+    //
+    // Catalog
+    //
+
+    // Lookup of tables and columns by names and ids. It is built on demand after tables or columns are created, deleted, renamed or moved
+    private volatile Catalog catalog;
+    void invalidateCatalog() {
+        this.catalog = null;
+    }
+    private Catalog getCatalog() {
+        Catalog ret = this.catalog;
+        if(ret == null) {
+            ret = new Catalog(this.tables, this.columns);
+            this.catalog = ret;
+        }
+        return ret;
+    }
+
+    private static class Catalog {
+        Map<String, Table> tables = new HashMap<>();
+        Map<String, Element> ids = new HashMap<>();
+        Map<Table, List<Column>> columns = new HashMap<>(); // Columns of each table in the order of creation
+        Map<Table, Map<String, Column>> columnNames = new HashMap<>();
+
+        Catalog(List<Table> tables, List<Column> columns) {
+            for(Table tab : tables) {
+                this.tables.putIfAbsent(tab.getName(), tab); // The first element is found if names are not unique
+                this.ids.put(tab.getId().toString(), tab);
+            }
+
+            Map<Table, List<Column>> tableColumns = new HashMap<>();
+            for(Column col : columns) {
+                this.ids.put(col.getId().toString(), col);
+                tableColumns.computeIfAbsent(col.getInput(), k -> new ArrayList<>()).add(col);
+                this.columnNames.computeIfAbsent(col.getInput(), k -> new HashMap<>()).putIfAbsent(col.getName(), col);
+            }
+            tableColumns.forEach((tab, cols) -> this.columns.put(tab, Collections.unmodifiableList(cols)));
+        }
     }
 
     //
     // Evaluate
     //
 
+    // If not null then elements of each layer of the topology are evaluated in parallel by this pool
+    protected ForkJoinPool executor;
+    public ForkJoinPool getExecutor() {
+        return this.executor;
+    }
+    public void setExecutor(ForkJoinPool executor) {
+        this.executor = executor;
+    }
+
+    // It is maintained incrementally when elements are added, removed or redefined
     protected Topology topology;
     protected long topologyChangedAt; // Time of latest change
     public long getTopologyChangedAt() {
         return this.topologyChangedAt;
     }
+    void updateTopology(Element elem) { // Definition of the element has changed
+        this.topology.update(elem);
+        this.topologyChangedAt = System.nanoTime();
+    }
 
     public void evaluate() {
-        if(this.topology == null) {
-            this.topology = new Topology(this);
-            this.topology.create();
-            this.topologyChangedAt = System.nanoTime();
-        }
-
-        // Find newest operation time
-        long newestColumnTime = this.columns.stream().mapToLong(x -> x.getDefinitionChangedAt()).max().getAsLong();
-        long newestTableTime = this.tables.stream().mapToLong(x -> x.getDefinitionChangedAt()).max().getAsLong();
-        long definitionChangedAt = Math.max(newestColumnTime, newestTableTime);
 
-        // If topology is not up-to-date then update it
-        if(this.topologyChangedAt <= definitionChangedAt) {
-            this.topology = new Topology(this);
-            topology.create();
-            this.topologyChangedAt = System.nanoTime();
-        }
-
-        for(List<Element> layer : this.topology.layers) {
-
-            for(Element elem : layer) {
-                //
-                // Check possibility to evaluate
-                //
-                elem.getErrors().clear();
-                if(elem.hasErrorsDeep()) { // Columns with evaluation errors (might appear during previous pass) cannot be evaluated and remain dirty
-                    continue;
-                }
+        // Dirtiness and errors of each element are determined once in topological order from its own state and the state of its direct dependencies
+        Set<Element> dirty = ConcurrentHashMap.newKeySet(); // Elements which remain dirty after evaluation
+        Set<Element> failed = ConcurrentHashMap.newKeySet(); // Elements with errors (own or in dependencies)
 
-                //
-                // Check need to evaluate
-                //
-                if(!elem.isDirty()) {
-                    continue;
-                }
-
-                //
-                // Really evaluate
-                //
-                elem.evaluate();
+        for(Set<Element> layer : this.topology.layers) {
+            if(this.executor == null) {
+                layer.forEach(x -> this.evaluateElement(x, dirty, failed));
+            }
+            else {
+                this.evaluateParallel(layer, dirty, failed);
             }
         }
 
         // After evaluating, clear the changes in all elements of the graph
-        for(List<Element> layer : this.topology.layers) {
+        for(Set<Element> layer : this.topology.layers) {
             for(Element elem : layer) {
 
                 if(elem instanceof Column) {
@@ -181,6 +243,101 @@ public class Schema {
         }
     }
 
+    protected void evaluateElement(Element elem, Set<Element> dirty, Set<Element> failed) {
+        Set<Element> deps = this.topology.dependencies.get(elem);
+
+        //
+        // Check possibility to evaluate
+        //
+        elem.getErrors().clear();
+        for(Element dep : deps) {
+            if(failed.contains(dep)) { // Columns with evaluation errors (might appear during previous pass) cannot be evaluated and remain dirty
+                failed.add(elem);
+                return;
+            }
+        }
+
+        //
+        // Check need to evaluate
+        //
+        if(!this.isDirty(elem, deps, dirty)) {
+            return;
+        }
+
+        //
+        // Really evaluate
+        //
+        if(elem instanceof Column) {
+            ((Column)elem).evaluateOperation();
+        }
+        else if(elem instanceof Table) {
+            ((Table)elem).evaluateOperation();
+        }
+
+        if(!elem.getErrors().isEmpty()) {
+            failed.add(elem);
+        }
+        else if(this.isDirty(elem, deps, dirty)) { // For example, non-derived elements
+            dirty.add(elem);
+        }
+    }
+
+    // Dependencies are supposed to be already checked so that their dirtiness is in the set
+    protected boolean isDirty(Element elem, Set<Element> deps, Set<Element> dirty) {
+        long changedAt;
+        if(elem instanceof Column) {
+            Column col = (Column)elem;
+            changedAt = col.getData().getChangedAt();
+            if(col.getOperation() != null && col.getDefinitionChangedAt() > changedAt) return true; // Definition has changed
+        }
+        else {
+            Table tab = (Table)elem;
+            changedAt = tab.getData().getChangedAt();
+            if(tab.getDefinitionChangedAt() > changedAt) return true; // Definition has changed
+        }
+
+        // One of its dependencies has changes or is dirty
+        for(Element dep : deps) {
+            if(dep instanceof Column) {
+                if(((Column)dep).getData().getChangedAt() > changedAt) return true;
+            }
+            else if(dep instanceof Table) {
+                if(((Table)dep).getData().getChangedAt() > changedAt) return true;
+            }
+
+            if(dirty.contains(dep)) return true;
+        }
+
+        return false;
+    }
+
+    protected void evaluateParallel(Set<Element> layer, Set<Element> dirty, Set<Element> failed) {
+
+        // Columns of one layer do not depend on each other and write only their own data so they are evaluated concurrently
+        // Tables and project columns add records to tables (and hence change data of other columns) so they are evaluated sequentially afterwards
+        List<Element> parallel = new ArrayList<>();
+        List<Element> sequential = new ArrayList<>();
+        for(Element elem : layer) {
+            if(elem instanceof Column && ((Column)elem).getOperationType() != OperationType.PROJECT) parallel.add(elem);
+            else sequential.add(elem);
+        }
+
+        if(parallel.size() > 1) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for(Element elem : parallel) {
+                tasks.add(this.executor.submit(() -> this.evaluateElement(elem, dirty, failed)));
+            }
+            for(ForkJoinTask<?> task : tasks) {
+                task.join(); // Barrier before the next layer
+            }
+        }
+        else {
+            parallel.forEach(x -> this.evaluateElement(x, dirty, failed));
+        }
+
+        sequential.forEach(x -> this.evaluateElement(x, dirty, failed));
+    }
+
     //
     // Serialization and construction
     //
@@ -195,10 +352,12 @@ public class Schema {
 
         this.name = name;
 
+        this.topology = new Topology(this);
         this.topologyChangedAt = System.nanoTime();
 
         // Create primitive tables
         Table objectType = createTable("Object");
+        Table instantType = createTable("Instant"); // Columns of this type store time stamps in compressed form
     }
 
 }
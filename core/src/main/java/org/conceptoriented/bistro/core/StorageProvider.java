@@ -0,0 +1,14 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * Factory of objects storing the data of tables and columns.
+ * A provider can be set for the whole schema as well as for individual tables and columns (overriding the provider of the schema).
+ */
+public interface StorageProvider {
+
+    // Create data of the table (ids of its records)
+    public TableData createTableData(Table table);
+
+    // Create data of the column (its output values) for the specified range of ids of its input table
+    public ColumnData createColumnData(Column column, long start, long end);
+}
@@ -22,9 +22,10 @@ public class Table implements Element {
     }
     public void setName(String name) {
         this.name = name;
+        this.schema.invalidateCatalog();
     }
 
-    private static List<String> primitiveNames = Arrays.asList("Object", "Double", "Integer", "String");
+    private static List<String> primitiveNames = Arrays.asList("Object", "Double", "Integer", "Long", "String", "Instant");
     public boolean isPrimitive() {
         return this.primitiveNames.stream().anyMatch(x -> x.equalsIgnoreCase(this.name));
     }
@@ -40,6 +41,12 @@ public class Table implements Element {
     // Data
     //
 
+    // Numeric columns of this table store their data outside of the heap
+    private boolean offHeap = false;
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
     private TableData data;
     public TableData getData() {
         return this.data;
@@ -48,6 +55,32 @@ public class Table implements Element {
         this.data = data;
     }
 
+    // Storage of this table and its columns overriding the storage of the schema
+    private StorageProvider storageProvider;
+    public StorageProvider getStorageProvider() {
+        if(this.storageProvider != null) return this.storageProvider;
+        return this.schema.getStorageProvider();
+    }
+    public void setStorageProvider(StorageProvider storageProvider) { // Existing data is copied to the new storage by retaining its ids
+        this.storageProvider = storageProvider;
+
+        TableData oldData = this.data;
+        TableData newData = this.getStorageProvider().createTableData(this);
+        newData.restore(oldData.getAddedRange(), oldData.getRemovedRange());
+        newData.setChangedAt(oldData.getChangedAt());
+        this.data = newData;
+
+        // Columns without their own storage use the storage of the table
+        for(Column column : this.getColumns()) {
+            if(column.hasStorageProvider()) continue;
+            column.updateStorage();
+        }
+
+        // Indexes are created in the new storage and built from the copied data when they are used
+        oldData.getIndexes().forEach(x -> newData.createIndex(x));
+        oldData.getSortedIndexes().forEach(x -> newData.createSortedIndex(x));
+    }
+
     //
     // Element interface
     //
@@ -78,24 +111,16 @@ public class Table implements Element {
     }
     @Override
     public boolean hasDependency(Element element) {
-        for(Element dep : this.getDependencies()) {
-            if(dep == element) return true;
-            if(dep.hasDependency(element)) return true; // Recursion
-        }
-        return false;
+        return Column.hasDependency(this, element, new HashSet<>());
     }
 
     @Override
-    public List<Element> getDependents() {
-        return new ArrayList<>();
+    public List<Element> getDependents() { // Reverse edges are maintained by the schema topology
+        return new ArrayList<>(this.schema.topology.getDependents(this));
     }
     @Override
     public boolean hasDependents(Element element) {
-        for(Element dep : this.getDependents()) {
-            if(dep == this) return true;
-            if(dep.hasDependents(element)) return true;// Recursion
-        }
-        return false;
+        return this.schema.topology.hasDownstream(this, Collections.singleton(element));
     }
 
     private List<BistroException> errors = new ArrayList<>();
@@ -106,18 +131,14 @@ public class Table implements Element {
 
     @Override
     public boolean hasErrorsDeep() {
-        if(errors.size() > 0) return true; // Check this element
-
-        // Otherwise check errors in dependencies (recursively)
-        for(Element dep : this.getDependencies()) {
-            if(dep.hasErrorsDeep()) return true;
-        }
-
-        return false;
+        return Column.hasErrorsDeep(this, new HashSet<>());
     }
 
     @Override
     public boolean isDirty() {
+        return this.isDirty(new HashMap<>());
+    }
+    boolean isDirty(Map<Element, Boolean> visited) { // Dirtiness of already visited dependencies is reused
 
         // Definition has changed
         if(this.getDefinitionChangedAt() > this.getData().getChangedAt()) return true;
@@ -132,7 +153,7 @@ public class Table implements Element {
                 if(((Table)dep).getData().getChangedAt()  > thisChangedAt) return true;
             }
 
-            if(dep.isDirty()) return true; // Recursion
+            if(Column.isDirty(dep, visited)) return true; // Recursion
         }
 
         return false;
@@ -174,20 +195,28 @@ public class Table implements Element {
             return;
         }
 
+        this.evaluateOperation();
+    }
+
+    void evaluateOperation() { // Evaluate without checking dependencies (they are checked by the caller)
+        if(this.getOperationType() == OperationType.NOOP) {
+            return;
+        }
+
         //
         // Check if it is a project table (if it is populated by some incoming project column)
         //
 
-        boolean isProj = false;
-        for(Column col : this.schema.getColumns()) {
-            if(col.getOperationType() != OperationType.PROJECT) continue;
-            isProj = true;
-            break;
-        }
+        List<Column> projColumns = this.getProjColumns();
 
-        if(isProj) {
-            // Only reset to initial state (empty). Population will be performed by project columns
-            this.getData().reset();
+        if(!projColumns.isEmpty()) {
+            // Population is performed by project columns which append only missing records so that ids of existing records remain stable
+            // Only if the definition has changed (including the definitions of project columns), the table is reset to initial state (empty)
+            if(this.getDefinitionChangedAt() > this.getData().getChangedAt()) {
+                this.getData().reset();
+                projColumns.forEach(x -> x.getData().setChangedAt(0)); // Very old - all facts have to be projected again
+                // Columns of this table with state (e.g., accumulate columns) process all facts again because the reset is signaled by the table data
+            }
             return;
         }
 
@@ -222,10 +251,12 @@ public class Table implements Element {
 
         this.operation = operation;
 
-        if(this.hasDependency(this)) {
+        if(this.schema.topology.isCyclic(this, this.getDependencies())) { // New dependencies must not be downstream elements
             this.noop(); // Reset definition because of failure to set new operation
             throw new BistroException(BistroErrorCode.DEFINITION_ERROR, "Cyclic dependency.", "This table depends on itself directly or indirectly.");
         }
+
+        this.schema.updateTopology(this);
     }
 
     @Override
@@ -241,7 +272,7 @@ public class Table implements Element {
         return true;
     }
 
-    protected long definitionChangedAt; // Time of latest change
+    protected volatile long definitionChangedAt; // Time of latest change (volatile because elements are evaluated by parallel workers)
     public long getDefinitionChangedAt() {
         return this.definitionChangedAt;
     }
@@ -300,7 +331,9 @@ public class Table implements Element {
 
     public List<Column> getProjColumns() { // Get all incoming project-columns
         List<Column> ret = new ArrayList<>();
-        for(Column col : this.getSchema().getColumns()) {
+        for(Element dep : this.getSchema().topology.getDependents(this)) { // Project columns depend on their output table
+            if(!(dep instanceof Column)) continue;
+            Column col = (Column)dep;
             if(col.getOutput() != this) continue;
             if(col.getOperationType() != OperationType.PROJECT) continue; // Skip non-key columns
             ret.add(col);
@@ -329,11 +362,21 @@ public class Table implements Element {
         return true;
     }
 
-    public Table(Schema schema, String name) {
+    @Override
+    public int hashCode() {
+        return this.id.hashCode();
+    }
+
+    public Table(Schema schema, String name, boolean offHeap) {
         this.schema = schema;
         this.id = UUID.randomUUID();
         this.name = name;
+        this.offHeap = offHeap;
+
+        this.data = this.getStorageProvider().createTableData(this);
+    }
 
-        this.data = new org.conceptoriented.bistro.core.data.TableDataImpl(this);
+    public Table(Schema schema, String name) {
+        this(schema, name, false);
     }
 }
@@ -10,19 +10,26 @@ public interface TableData {
 
     Range add(long count);
 
+    // Add count records with the values of the specified columns given as arrays (double[], long[], int[] or Object[]) with at least count elements.
+    // Values are copied in blocks and other columns get their default value. Ids of the added records are returned
+    Range add(int count, List<Column> columns, List<Object> values);
+
     long remove();
 
     Range remove(long count);
 
     void removeAll();
 
-    long remove(Column column, Object value);
+    long remove(Column column, Object value); // Remove oldest records with values less than the specified value. Column values must be sorted.
 
     // Initialize to default state (e.g., empty set) by also forgetting change history
     // It is important to propagate this operation to all dependents as reset (not simply emptying) because some of them (like accumulation) have to forget/reset history and ids/references might become invalid
-    // TODO: This propagation can be done manually or we can introduce a special method or it a special reset flag can be introduced which is then inherited and executed by all dependents during evaluation.
+    // The reset is signaled to dependents by the reset time (see getResetAt) which they check during evaluation
     void reset();
 
+    // Set the ranges of ids (e.g., restored from a snapshot) without changing the column data
+    void restore(Range addedRange, Range removedRange);
+
     //
     // Read/write records (convenience methods)
     //
@@ -38,6 +45,25 @@ public interface TableData {
     // ISSUE: If not found, should output be NULL or -1? On one hand, we say that links are Long. But Long can be NULL. In future, it could be long which cannot be NULL.
     long findValues(List<Object> values, List<Column> columns);
 
+    // Hash index on the specified columns which will be used by findValues for the same list of columns instead of scanning all records
+    // Values of indexed columns of existing records have to be changed via setValues or registered as changes of the column data (setChanged) in order to update the index
+    // Link columns create an index on the key columns of their type table
+    void createIndex(List<Column> columns);
+    void dropIndex(List<Column> columns);
+
+    // Find ids of records with the column values in [from, to) ordered by these values. Null bound means no bound.
+    // If there is a sorted index on this column then it is used. Otherwise, the column values are supposed to be sorted (e.g., time stamps) and binary search is used.
+    long[] findRange(Column column, Object from, Object to);
+
+    // Sorted index on the specified column which will be used by findRange for columns with unsorted values
+    // Values of the indexed column of existing records have to be changed via setValues in order to update the index
+    void createSortedIndex(Column column);
+    void dropSortedIndex(Column column);
+
+    // Columns of all hash indexes and sorted indexes (e.g., in order to create the same indexes in another storage)
+    List<List<Column>> getIndexes();
+    List<Column> getSortedIndexes();
+
     //
     // Tracking changes.
     //
@@ -52,6 +78,11 @@ public interface TableData {
 
     long getChangedAt();
 
+    // Time of the latest reset. Dependents with state (like accumulation) have to process all records again if it is newer than their last evaluation
+    long getResetAt();
+
+    void setChangedAt(long changedAt);
+
     boolean isChanged();
 
     void setChanged();
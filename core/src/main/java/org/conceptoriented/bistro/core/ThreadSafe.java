@@ -0,0 +1,8 @@
+package org.conceptoriented.bistro.core;
+
+/**
+ * Marker interface for user-defined functions which can be called from many threads concurrently (for example, because they are stateless).
+ * Only such functions are evaluated in parallel. Lambdas are marked using an intersection type like (EvalCalculate & ThreadSafe) p -> ...
+ */
+public interface ThreadSafe {
+}
@@ -1,16 +1,24 @@
 package org.conceptoriented.bistro.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
+/**
+ * Dependency graph of elements organized in layers.
+ * The graph of a schema is persistent: it stores hashed adjacency in both directions and the layer of each element.
+ * Adding, removing or redefining an element updates only its own dependencies and the layers of elements downstream.
+ */
 public class Topology {
 
     Schema schema;
 
     Element element;
 
-    // Each layer is a list of elements which depend on elements of previous layers
-    List<List<Element>> layers = new ArrayList<>();
+    // Each layer is a set of elements which depend on elements of previous layers
+    List<Set<Element>> layers = new ArrayList<>();
+
+    Map<Element, Set<Element>> dependencies = new HashMap<>(); // Elements of the graph and their dependencies
+    Map<Element, Set<Element>> dependents = new HashMap<>(); // Reverse edges (also for dependencies which are not in the graph yet)
+    Map<Element, Integer> levels = new HashMap<>(); // Layer of each element or -1 if it cannot be evaluated (missing dependency or cycle)
 
     public void create() {
         if(this.schema == null) return;
@@ -19,65 +27,226 @@ public class Topology {
         else this.create_for_element();
     }
 
-    protected void create_for_schema() { // Build a list of layers of the graph
+    protected void create_for_schema() { // Build a list of layers of the graph by counting unresolved dependencies (in-degrees)
 
-        this.layers = new ArrayList<>(); // Each layer is a list of elements which depend on elements of previous layers
+        this.layers = new ArrayList<>();
+        this.dependencies.clear();
+        this.dependents.clear();
+        this.levels.clear();
 
         List<Element> all = new ArrayList<>();
         all.addAll(this.schema.getColumns());
         all.addAll(this.schema.getTables());
 
-        List<Element> done = new ArrayList<>();
-
-        while(true) { // One pass for each new (non-empty) layer
+        for(Element elem : all) {
+            this.dependencies.put(elem, new LinkedHashSet<>());
+            this.levels.put(elem, -1);
+        }
+        for(Element elem : all) {
+            this.setDependencies(elem);
+        }
 
-            List<Element> layer = new ArrayList<>();
+        Map<Element, Integer> inDegrees = new HashMap<>();
+        Set<Element> layer = new LinkedHashSet<>();
+        for(Element elem : all) {
+            Set<Element> deps = this.dependencies.get(elem);
+            int inDegree = deps.size();
+            for(Element dep : deps) {
+                if(!this.dependencies.containsKey(dep)) { inDegree = -1; break; } // Missing dependency - never resolved
+            }
+            inDegrees.put(elem, inDegree);
+            if(inDegree == 0) layer.add(elem);
+        }
 
-            for(Element elem : all) {
+        while(!layer.isEmpty()) { // One pass for each new (non-empty) layer
 
-                if(done.contains(elem)) continue;
+            int level = this.layers.size();
+            this.layers.add(layer);
 
-                boolean isNext = true;
-                for(Element dep : elem.getDependencies()) {
-                    if(!done.contains(dep)) { isNext = false; break; }
+            Set<Element> next = new LinkedHashSet<>();
+            for(Element elem : layer) {
+                this.levels.put(elem, level);
+                for(Element dep : this.dependents.getOrDefault(elem, Collections.emptySet())) {
+                    int inDegree = inDegrees.getOrDefault(dep, -1);
+                    if(inDegree <= 0) continue;
+                    inDegrees.put(dep, --inDegree);
+                    if(inDegree == 0) next.add(dep);
                 }
-                if(isNext) layer.add(elem);
             }
 
-            if(layer.isEmpty()) break;
-
-            this.layers.add(layer);
-            done.addAll(layer);
+            layer = next;
         }
+        // Elements of cycles remain with non-zero in-degree and are not included in any layer
     }
 
     protected void create_for_element() { // Build graph with one element as the last element
 
-        this.layers = new ArrayList<>(); // Each layer is a list of elements which depend on elements of previous layers
+        this.layers = new ArrayList<>(); // Each layer is a set of elements which depend on elements of previous layers
 
         // Start from the last layer and then each previous layer will contain all dependencies of the previous layer elements
 
-        List<Element> layer = new ArrayList<>();
+        Set<Element> layer = new LinkedHashSet<>();
         layer.add(this.element);
 
         while(true) {
 
-            this.layers.add(0, new ArrayList<>(layer));
+            this.layers.add(0, new LinkedHashSet<>(layer));
             layer.clear();
 
             for(Element elem : layers.get(0)) { // All elements of the previous layer
-                for(Element dep : elem.getDependencies()){
+                layer.addAll(elem.getDependencies());
+            }
 
-                    if(layer.contains(dep)) continue;
+            if(layer.isEmpty()) break;
+        }
+    }
 
-                    layer.add(dep);
-                }
+    //
+    // Incremental maintenance (for schema graph)
+    //
+
+    void add(Element elem) {
+        if(this.dependencies.containsKey(elem)) return;
+
+        this.dependencies.put(elem, new LinkedHashSet<>());
+        this.levels.put(elem, -1);
+
+        // Elements which referred to this element before it was added can be resolved now
+        Set<Element> changed = this.refresh(elem);
+        changed.addAll(this.dependents.getOrDefault(elem, Collections.emptySet()));
+        this.propagate(changed);
+    }
+
+    void remove(Element elem) {
+        Set<Element> deps = this.dependencies.remove(elem);
+        if(deps == null) return;
+
+        for(Element dep : deps) {
+            Set<Element> depDependents = this.dependents.get(dep);
+            if(depDependents != null) depDependents.remove(elem);
+        }
+        this.setLevel(elem, -1);
+        this.levels.remove(elem);
+
+        // Elements which still depend on the removed element cannot be evaluated anymore
+        Set<Element> changed = this.refresh(elem);
+        changed.remove(elem);
+        changed.addAll(this.dependents.getOrDefault(elem, Collections.emptySet()));
+        this.propagate(changed);
+    }
+
+    void update(Element elem) { // Definition of the element has changed
+        if(!this.dependencies.containsKey(elem)) return;
+        this.propagate(this.refresh(elem));
+    }
+
+    //
+    // Dependents (reverse edges of the schema graph)
+    //
+
+    public Set<Element> getDependents(Element elem) { // Elements which directly depend on this element
+        return this.dependents.getOrDefault(elem, Collections.emptySet());
+    }
+
+    public Set<Element> getDownstream(Element elem) { // All elements which directly or indirectly depend on this element
+        Set<Element> downstream = new LinkedHashSet<>();
+        Deque<Element> queue = new ArrayDeque<>(this.getDependents(elem));
+        while(!queue.isEmpty()) {
+            Element e = queue.poll();
+            if(downstream.add(e)) queue.addAll(this.getDependents(e));
+        }
+        return downstream;
+    }
+
+    public boolean hasDownstream(Element elem, Collection<Element> elems) { // Whether some of the elements directly or indirectly depend on this element
+        if(elems.isEmpty()) return false;
+        Set<Element> visited = new HashSet<>();
+        Deque<Element> queue = new ArrayDeque<>(this.getDependents(elem));
+        while(!queue.isEmpty()) {
+            Element e = queue.poll();
+            if(!visited.add(e)) continue;
+            if(elems.contains(e)) return true;
+            queue.addAll(this.getDependents(e));
+        }
+        return false;
+    }
+
+    // The element cannot depend on itself or on its (existing) downstream elements
+    boolean isCyclic(Element elem, Collection<Element> deps) {
+        if(deps.contains(elem)) return true;
+        return this.hasDownstream(elem, deps);
+    }
+
+    // Update dependencies of the element and the elements whose dependencies depend on its definition
+    // (product tables depend on the types of their key columns, and key columns depend on their product table)
+    protected Set<Element> refresh(Element elem) {
+        Set<Element> affected = new LinkedHashSet<>();
+        affected.add(elem);
+        if(elem instanceof Column) {
+            affected.add(((Column)elem).getInput());
+        }
+        else if(elem instanceof Table) {
+            affected.addAll(((Table)elem).getColumns());
+        }
+
+        for(Element e : affected) {
+            if(!this.dependencies.containsKey(e)) continue;
+            this.setDependencies(e);
+        }
+        return affected;
+    }
+
+    protected void setDependencies(Element elem) {
+        Set<Element> deps = this.dependencies.get(elem);
+        for(Element dep : deps) {
+            Set<Element> depDependents = this.dependents.get(dep);
+            if(depDependents != null) depDependents.remove(elem);
+        }
+        deps.clear();
+
+        deps.addAll(elem.getDependencies());
+        for(Element dep : deps) {
+            this.dependents.computeIfAbsent(dep, k -> new LinkedHashSet<>()).add(elem);
+        }
+    }
+
+    // Recompute layers of the specified elements and all elements downstream whose layer changes
+    protected void propagate(Collection<Element> elems) {
+        Deque<Element> queue = new ArrayDeque<>(elems);
+        while(!queue.isEmpty()) {
+            Element elem = queue.poll();
+            Set<Element> deps = this.dependencies.get(elem);
+            if(deps == null) continue; // Not in the graph
+
+            int level = 0;
+            for(Element dep : deps) {
+                int depLevel = this.levels.getOrDefault(dep, -1);
+                if(depLevel < 0) { level = -1; break; }
+                level = Math.max(level, depLevel + 1);
             }
+            if(level > this.dependencies.size()) level = -1; // Cycle
 
-            if(layer.isEmpty()) break;
+            if(level == this.levels.get(elem)) continue;
+
+            this.setLevel(elem, level);
+            queue.addAll(this.dependents.getOrDefault(elem, Collections.emptySet()));
+        }
+
+        // Remove empty last layers
+        while(!this.layers.isEmpty() && this.layers.get(this.layers.size() - 1).isEmpty()) {
+            this.layers.remove(this.layers.size() - 1);
         }
     }
 
+    protected void setLevel(Element elem, int level) {
+        Integer oldLevel = this.levels.put(elem, level);
+        if(oldLevel != null && oldLevel >= 0) this.layers.get(oldLevel).remove(elem);
+        if(level < 0) return;
+
+        while(this.layers.size() <= level) this.layers.add(new LinkedHashSet<>());
+        this.layers.get(level).add(elem);
+    }
+
     public Topology(Column column) {
         this.element = column;
         this.schema = column.getSchema();
@@ -0,0 +1,166 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.BistroErrorCode;
+import org.conceptoriented.bistro.core.BistroException;
+import org.conceptoriented.bistro.core.ColumnData;
+import org.conceptoriented.bistro.core.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Functionality shared by all column data implementations independent of how the output values are physically stored.
+ * It stores the identity of the data object and tracks its changes (delta).
+ */
+public abstract class ColumnDataBase implements ColumnData {
+
+    private final UUID id;
+    public UUID getId() {
+        return this.id;
+    }
+
+    // Non-null value stored in column data of a numeric type
+    protected static Number toNumber(Object value) {
+        if(value instanceof Number) return (Number)value;
+        throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Wrong value type.", "Value of type " + value.getClass().getName() + " cannot be stored in numeric column data.");
+    }
+
+    //
+    // Search in sorted values
+    //
+
+    // Compare the value stored for this id with the specified (non-null) value. Null outputs are greater than any value.
+    // Implementations storing primitive values override it in order to compare without boxing.
+    protected int compare(long id, Object value) {
+        Object val = this.getValue(id);
+        if(val == null) return 1;
+        return ((Comparable)val).compareTo(value);
+    }
+
+    // Binary search of the first id with the value greater than (upper) or greater than or equal to (lower) the specified value
+    protected long findBound(Object value, boolean upper) {
+        Range range = this.getIdRange();
+        long low = range.start;
+        long high = range.end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            int cmp = this.compare(mid, value);
+            if (cmp < 0 || (upper && cmp == 0))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    @Override
+    public long findSorted(Object value) {
+        long id = this.findBound(value, false);
+        if(id < this.getIdRange().end && this.compare(id, value) == 0) {
+            return id; // First of equal values
+        }
+        return -id - 1; // Not found
+    }
+
+    @Override
+    public long findSortedFromStart(Object value) {
+        return this.findBound(value, false);
+    }
+
+    @Override
+    public long findSortedLower(Object value) {
+        return this.findBound(value, false);
+    }
+
+    @Override
+    public long findSortedUpper(Object value) {
+        return this.findBound(value, true);
+    }
+
+    @Override
+    public Range findSortedRange(Object from, Object to) {
+        Range range = this.getIdRange();
+        long start = from == null ? range.start : this.findBound(from, false);
+        long end = to == null ? range.end : this.findBound(to, false);
+        return new Range(start, Math.max(start, end));
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    protected volatile long changedAt; // Time of latest change (volatile because elements are evaluated by parallel workers)
+    @Override
+    public long getChangedAt() {
+        return this.changedAt;
+    }
+    @Override
+    public void setChangedAt(long changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    protected boolean isChanged = false;
+    @Override
+    public boolean isChanged() {
+        return this.isChanged;
+    }
+
+    @Override
+    public void setChanged() {
+        this.isChanged = true;
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public void resetChanged() { // Forget about the change status/scope (reset change delta)
+        this.isChanged = false;
+        this.changedRanges.clear();
+    }
+
+    protected TreeMap<Long, Long> changedRanges = new TreeMap<>(); // Disjoint ranges of changed ids (start -> end). Overlapping and adjacent ranges are merged.
+
+    @Override
+    public void setChanged(long id) {
+        this.setChanged(new Range(id, id + 1));
+    }
+
+    @Override
+    public void setChanged(Range range) {
+        if(range.getLength() <= 0) return;
+        long start = range.start;
+        long end = range.end;
+
+        Map.Entry<Long, Long> prev = this.changedRanges.floorEntry(start);
+        if(prev != null && prev.getValue() >= start) { // Extend the previous range
+            start = prev.getKey();
+            end = Math.max(end, prev.getValue());
+        }
+        Map.Entry<Long, Long> next = this.changedRanges.ceilingEntry(start);
+        while(next != null && next.getKey() <= end) { // Absorb the following ranges
+            end = Math.max(end, next.getValue());
+            this.changedRanges.remove(next.getKey());
+            next = this.changedRanges.higherEntry(next.getKey());
+        }
+        this.changedRanges.put(start, end);
+
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        List<Range> ranges = new ArrayList<>(this.changedRanges.size());
+        this.changedRanges.forEach((start, end) -> ranges.add(new Range(start, end)));
+        return ranges;
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataBase() {
+        this.id = UUID.randomUUID();
+    }
+}
@@ -0,0 +1,178 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Range;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing its outputs in a ring of fixed-size chunks.
+ * Appending allocates new chunks at the end and removing releases whole chunks at the start so that existing values are never copied.
+ * It is intended for stream tables where records are continuously appended and the oldest records are removed (sliding windows).
+ */
+public class ColumnDataChunked extends ColumnDataBase {
+
+    //
+    // Data
+    //
+
+    private Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024; // Another size can be passed to the constructor
+
+    private final int chunkBits; // Chunk size is a power of 2
+    private final int chunkMask;
+
+    private Object[][] chunks; // Ring of chunks. Its length is a power of 2.
+    private int firstChunk = 0; // Position of the first (oldest) chunk in the ring
+    private int chunkCount = 0; // Number of allocated chunks
+    private long chunkStartId; // Id stored in the first cell of the first chunk
+
+    private Object[] chunk(long id) {
+        long index = id - this.chunkStartId;
+        return this.chunks[(this.firstChunk + (int)(index >>> this.chunkBits)) & (this.chunks.length - 1)];
+    }
+    private int cell(long id) {
+        return (int)((id - this.chunkStartId) & this.chunkMask);
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) { return this.chunk(id)[this.cell(id)]; }
+
+    @Override
+    public void setValue(long id, Object value) { this.chunk(id)[this.cell(id)] = value; }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        long id = range.start;
+        while(id < range.end) {
+            int from = this.cell(id);
+            int to = (int)Math.min(this.chunkMask + 1, from + (range.end - id));
+            Arrays.fill(this.chunk(id), from, to, value);
+            id += to - from;
+        }
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.setValue(this.idRange, value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        // Allocate new chunks at the end of the ring if necessary
+        long newEnd = this.idRange.end + count;
+        while(this.chunkStartId + ((long)this.chunkCount << this.chunkBits) < newEnd) {
+            if(this.chunkCount == this.chunks.length) { // Ring is full - grow it (only references to chunks are copied)
+                Object[][] newChunks = new Object[this.chunks.length * 2][];
+                for(int i = 0; i < this.chunkCount; i++) {
+                    newChunks[i] = this.chunks[(this.firstChunk + i) & (this.chunks.length - 1)];
+                }
+                this.chunks = newChunks;
+                this.firstChunk = 0;
+            }
+            this.chunks[(this.firstChunk + this.chunkCount) & (this.chunks.length - 1)] = new Object[this.chunkMask + 1];
+            this.chunkCount++;
+        }
+
+        // Initialize
+        Range added = new Range(this.idRange.end, newEnd);
+        this.idRange.end = newEnd;
+        if(this.defaultValue != null) {
+            this.setValue(added, this.defaultValue);
+        }
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        count = Math.min(count, this.idRange.getLength());
+        this.idRange.start += count;
+
+        // Release chunks which do not store valid ids anymore
+        while(this.chunkCount > 0 && this.idRange.start - this.chunkStartId > this.chunkMask) {
+            this.chunks[this.firstChunk] = null;
+            this.firstChunk = (this.firstChunk + 1) & (this.chunks.length - 1);
+            this.chunkCount--;
+            this.chunkStartId += this.chunkMask + 1;
+        }
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        this.chunks = new Object[4][];
+        this.firstChunk = 0;
+        this.chunkCount = 0;
+        this.chunkStartId = start;
+
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        this.add(end - start);
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Chunks are released when they are removed
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataChunked(long start, long end, int chunkSize) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(chunkSize, 2) - 1); // Round up to a power of 2
+        this.chunkBits = bits;
+        this.chunkMask = (1 << bits) - 1;
+
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+
+    public ColumnDataChunked(long start, long end) {
+        this(start, end, DEFAULT_CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,106 @@
+package org.conceptoriented.bistro.core.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column data storing its outputs as int codes of values in a dictionary (dictionary encoding).
+ * It is intended for columns with few distinct values (like symbols, device ids or categories) so that each value object is stored only once.
+ * Equal values have equal codes and hence values can be compared via their codes (also in different columns if they share one dictionary).
+ * Values are never removed from the dictionary.
+ */
+public class ColumnDataDictionary extends ColumnDataPrimitive {
+
+    public static final int NULL = -1; // Code of null
+    public static final int NONE = -2; // Code of a value which is not in the dictionary (and hence not stored in any column)
+
+    /**
+     * Mapping between values and their codes which can be shared by many columns.
+     */
+    public static class Dictionary {
+
+        private final List<Object> values = new ArrayList<>(); // Code is the position of the value
+        private final Map<Object, Integer> codes = new HashMap<>();
+
+        public int size() {
+            return this.values.size();
+        }
+
+        public Object getValue(int code) {
+            return code < 0 ? null : this.values.get(code);
+        }
+
+        // Code of the value or NONE if it does not exist
+        public int getCode(Object value) {
+            if(value == null) return NULL;
+            Integer code = this.codes.get(value);
+            return code == null ? NONE : code;
+        }
+
+        // Code of the value which is added if it does not exist
+        public int encode(Object value) {
+            if(value == null) return NULL;
+            Integer code = this.codes.get(value);
+            if(code == null) {
+                code = this.values.size();
+                this.values.add(value);
+                this.codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    private final Dictionary dictionary;
+    public Dictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    private int[] codes; // This array stores codes of the output values
+
+    @Override
+    protected void resize(int from, int length, int newCapacity) {
+        int[] newCodes = new int[newCapacity];
+        if(length > 0) System.arraycopy(this.codes, from, newCodes, 0, length);
+        this.codes = newCodes;
+    }
+
+    @Override
+    protected void fill(int from, int to, Object value) {
+        Arrays.fill(this.codes, from, to, this.dictionary.encode(value));
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) { return this.dictionary.getValue(this.codes[id2offset(id)]); }
+
+    @Override
+    public void setValue(long id, Object value) { this.setCode(id, this.dictionary.encode(value)); }
+
+    public int getCode(long id) { return this.codes[id2offset(id)]; }
+
+    public void setCode(long id, int code) {
+        int offset = id2offset(id);
+        this.codes[offset] = code;
+        this.validity.set(offset, code != NULL);
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataDictionary(long start, long end, Dictionary dictionary) {
+        this.dictionary = dictionary;
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+
+    public ColumnDataDictionary(long start, long end) {
+        this(start, end, new Dictionary());
+    }
+}
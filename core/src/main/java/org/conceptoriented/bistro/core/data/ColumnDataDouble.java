@@ -0,0 +1,90 @@
+package org.conceptoriented.bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing its outputs in a double[] array without boxing.
+ * Null is represented by NaN, that is, it is not possible to distinguish between null and NaN outputs. Null cells are also cleared in the validity bitmap.
+ */
+public class ColumnDataDouble extends ColumnDataPrimitive {
+
+    private double[] values; // This array stores the output values
+
+    protected static double toDouble(Object value) {
+        return value == null ? Double.NaN : toNumber(value).doubleValue();
+    }
+
+    @Override
+    protected void resize(int from, int length, int newCapacity) {
+        double[] newValues = new double[newCapacity];
+        if(length > 0) System.arraycopy(this.values, from, newValues, 0, length);
+        this.values = newValues;
+    }
+
+    @Override
+    protected void fill(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, toDouble(value));
+    }
+
+    @Override
+    protected boolean isNullValue(Object value) {
+        return value == null || Double.isNaN(toNumber(value).doubleValue());
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? this.values[offset] : null;
+    }
+
+    @Override
+    public void setValue(long id, Object value) { this.setDouble(id, toDouble(value)); }
+
+    @Override
+    public double getDouble(long id) { return this.values[id2offset(id)]; }
+
+    @Override
+    public void setDouble(long id, double value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.validity.set(offset, !Double.isNaN(value));
+    }
+
+    @Override
+    public void getDoubles(long start, double[] values, int length) {
+        System.arraycopy(this.values, id2offset(start), values, 0, length);
+    }
+
+    @Override
+    public void setDoubles(long start, double[] values, int length) {
+        int offset = id2offset(start);
+        System.arraycopy(values, 0, this.values, offset, length);
+        for(int k = 0; k < length; k++) {
+            this.validity.set(offset + k, !Double.isNaN(values[k]));
+        }
+    }
+
+    //
+    // Search
+    //
+
+    @Override
+    protected int compare(long id, Object value) {
+        int offset = id2offset(id);
+        if(!this.validity.get(offset)) return 1;
+        return Double.compare(this.values[offset], toDouble(value));
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataDouble(long start, long end) {
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+}
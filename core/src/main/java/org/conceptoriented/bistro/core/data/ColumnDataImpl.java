@@ -1,21 +1,14 @@
 package org.conceptoriented.bistro.core.data;
 
-import org.conceptoriented.bistro.core.ColumnData;
 import org.conceptoriented.bistro.core.Range;
 
 import java.util.Arrays;
-import java.util.UUID;
 
 /**
  * It is responsible for explicit representation of a function, that is, a mapping from input ids to output columnPaths.
  * This representation can be changed by setting outputs for certain inputs. And it is possible to request outputs.
  */
-public class ColumnDataImpl implements ColumnData {
-
-    private final UUID id;
-    public UUID getId() {
-        return this.id;
-    }
+public class ColumnDataImpl extends ColumnDataBase {
 
     //
     // Data
@@ -43,12 +36,30 @@ public class ColumnDataImpl implements ColumnData {
     @Override
     public Object getValue(long id) { return this.values[id2offset(id)]; }
 
+    // Link columns store boxed ids which are unboxed directly from the array (null is the minimum value)
+    @Override
+    public long getLong(long id) {
+        Object value = this.values[id2offset(id)];
+        return value == null ? Long.MIN_VALUE : ((Number)value).longValue();
+    }
+    @Override
+    public void getLongs(long start, long[] values, int length) {
+        int offset = id2offset(start);
+        for(int k = 0; k < length; k++) {
+            Object value = this.values[offset + k];
+            values[k] = value == null ? Long.MIN_VALUE : ((Number)value).longValue();
+        }
+    }
+
     // Note: we do not set the change flag by assuming that only newly added records are changed - if it is not so then it has to be set manually
     // Note: methods are not safe - they do not check the validity of arguments (ids, values etc.)
 
     @Override
     public void setValue(long id, Object value) { this.values[id2offset(id)] = value; }
 
+    @Override
+    public void setValues(long start, Object[] values, int length) { System.arraycopy(values, 0, this.values, id2offset(start), length); }
+
     @Override
     public void setValue(Range range, Object value) {
         Arrays.fill(
@@ -92,10 +103,14 @@ public class ColumnDataImpl implements ColumnData {
     // Input range
     //
 
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
     @Override
     public void add() {
         this.add(1);
-        this.isChanged = true;
     }
     @Override
     public void add(long count) { // Remove the oldest records with lowest ids
@@ -116,28 +131,22 @@ public class ColumnDataImpl implements ColumnData {
         );
 
         this.idRange.end += count;
-
-        this.isChanged = true;
     }
 
     @Override
     public void remove() {
         this.remove(1);
-        this.isChanged = true;
     }
     @Override
     public void remove(long count) { // Remove the specified number of oldest records
         this.startIdOffset += count;
         this.idRange.start += count;
 
-        this.isChanged = true;
-
         this.gc();
     }
     @Override
     public void removeAll() {
         this.remove(this.idRange.getLength());
-        this.isChanged = true;
     }
 
     @Override
@@ -179,85 +188,11 @@ public class ColumnDataImpl implements ColumnData {
         }
     }
 
-    // Return insert index
-    @Override
-    public long findSorted(Object value) {
-
-        // The data is supposed to be sorted (for example, range table or time stamps)
-        int insertIndex = Arrays.binarySearch(
-                this.values,
-                this.startIdOffset,
-                (int)(this.startIdOffset + this.idRange.getLength()),
-                value
-        );
-        // TODO: In the case of multiple equal values, the index can be any. It is better if we return the first or last element of such intervals. So we need to check for equality and return start or end.
-
-        long id = offset2id(insertIndex);
-
-        return id;
-    }
-
-    @Override
-    public long findSortedFromStart(Object value) { // Find insertion index with the value strictly less than the specified value
-
-        // Values must be comparable (implement Comparable interface)
-
-        // Start from the last/old/smallest ids and move in the loop until a greater or equal value is found
-        int start = this.id2offset(this.idRange.start);
-        int end = this.id2offset(this.idRange.end);
-        for(int i = start; i < end; i++) {
-            Object val = this.values[i];
-            if(val == null) continue;
-            if(((Comparable)val).compareTo(value) < 0) { // It is still small
-                continue;
-            }
-            end = i;
-            break;
-        }
-
-        long id = offset2id(end);
-
-        return id;
-    }
-
-    //
-    // Tracking changes (delta)
-    //
-
-    private long changedAt; // Time of latest change
-    @Override
-    public long getChangedAt() {
-        return this.changedAt;
-    }
-    @Override
-    public void setChangedAt(long changedAt) {
-        this.changedAt = changedAt;
-    }
-
-    private boolean isChanged = false;
-    @Override
-    public boolean isChanged() {
-        return this.isChanged;
-    }
-
-    @Override
-    public void setChanged() {
-        this.isChanged = true;
-        this.changedAt = System.nanoTime();
-    }
-
-    @Override
-    public void resetChanged() { // Forget about the change status/scope (reset change delta)
-        this.isChanged = false;
-    }
-
     //
     // Creation
     //
 
     public ColumnDataImpl(long start, long end) {
-        this.id = UUID.randomUUID();
-
         this.reset(start, end);
         this.setChangedAt(0); // Very old - need to be evaluated
     }
@@ -0,0 +1,104 @@
+package org.conceptoriented.bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing its outputs in an int[] array without boxing.
+ * Nulls are tracked in the validity bitmap and null cells store the special value NULL (minimum int value).
+ * Typed accessors use NULL for null so this value can be stored only as an object.
+ */
+public class ColumnDataInteger extends ColumnDataPrimitive {
+
+    public static final int NULL = Integer.MIN_VALUE;
+
+    private int[] values; // This array stores the output values
+
+    protected static int toInt(Object value) {
+        return value == null ? NULL : toNumber(value).intValue();
+    }
+
+    @Override
+    protected void resize(int from, int length, int newCapacity) {
+        int[] newValues = new int[newCapacity];
+        if(length > 0) System.arraycopy(this.values, from, newValues, 0, length);
+        this.values = newValues;
+    }
+
+    @Override
+    protected void fill(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, toInt(value));
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? this.values[offset] : null;
+    }
+
+    @Override
+    public void setValue(long id, Object value) {
+        int offset = id2offset(id);
+        this.values[offset] = toInt(value);
+        this.validity.set(offset, value != null);
+    }
+
+    @Override
+    public int getInt(long id) { return this.values[id2offset(id)]; }
+
+    @Override
+    public void setInt(long id, int value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.validity.set(offset, value != NULL);
+    }
+
+    @Override
+    public void getInts(long start, int[] values, int length) {
+        System.arraycopy(this.values, id2offset(start), values, 0, length);
+    }
+
+    @Override
+    public void setInts(long start, int[] values, int length) {
+        int offset = id2offset(start);
+        System.arraycopy(values, 0, this.values, offset, length);
+        for(int k = 0; k < length; k++) {
+            this.validity.set(offset + k, values[k] != NULL);
+        }
+    }
+
+    @Override
+    public long getLong(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? this.values[offset] : ColumnDataLong.NULL;
+    }
+
+    @Override
+    public double getDouble(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? (double)this.values[offset] : Double.NaN;
+    }
+
+    //
+    // Search
+    //
+
+    @Override
+    protected int compare(long id, Object value) {
+        int offset = id2offset(id);
+        if(!this.validity.get(offset)) return 1;
+        return Integer.compare(this.values[offset], toInt(value));
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataInteger(long start, long end) {
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+}
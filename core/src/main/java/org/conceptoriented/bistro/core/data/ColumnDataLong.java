@@ -0,0 +1,98 @@
+package org.conceptoriented.bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing its outputs in a long[] array without boxing.
+ * Nulls are tracked in the validity bitmap and null cells store the special value NULL (minimum long value).
+ * Typed accessors use NULL for null so this value can be stored only as an object.
+ */
+public class ColumnDataLong extends ColumnDataPrimitive {
+
+    public static final long NULL = Long.MIN_VALUE;
+
+    private long[] values; // This array stores the output values
+
+    protected static long toLong(Object value) {
+        return value == null ? NULL : toNumber(value).longValue();
+    }
+
+    @Override
+    protected void resize(int from, int length, int newCapacity) {
+        long[] newValues = new long[newCapacity];
+        if(length > 0) System.arraycopy(this.values, from, newValues, 0, length);
+        this.values = newValues;
+    }
+
+    @Override
+    protected void fill(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, toLong(value));
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? this.values[offset] : null;
+    }
+
+    @Override
+    public void setValue(long id, Object value) {
+        int offset = id2offset(id);
+        this.values[offset] = toLong(value);
+        this.validity.set(offset, value != null);
+    }
+
+    @Override
+    public long getLong(long id) { return this.values[id2offset(id)]; }
+
+    @Override
+    public void setLong(long id, long value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.validity.set(offset, value != NULL);
+    }
+
+    @Override
+    public void getLongs(long start, long[] values, int length) {
+        System.arraycopy(this.values, id2offset(start), values, 0, length);
+    }
+
+    @Override
+    public void setLongs(long start, long[] values, int length) {
+        int offset = id2offset(start);
+        System.arraycopy(values, 0, this.values, offset, length);
+        for(int k = 0; k < length; k++) {
+            this.validity.set(offset + k, values[k] != NULL);
+        }
+    }
+
+    @Override
+    public double getDouble(long id) {
+        int offset = id2offset(id);
+        return this.validity.get(offset) ? (double)this.values[offset] : Double.NaN;
+    }
+
+    //
+    // Search
+    //
+
+    @Override
+    protected int compare(long id, Object value) {
+        int offset = id2offset(id);
+        if(!this.validity.get(offset)) return 1;
+        return Long.compare(this.values[offset], toLong(value));
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataLong(long start, long end) {
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+}
@@ -0,0 +1,393 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.BistroErrorCode;
+import org.conceptoriented.bistro.core.BistroException;
+import org.conceptoriented.bistro.core.Range;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+
+/**
+ * Column data storing numeric outputs (double, long or int) outside of the Java heap so that they are not scanned by the garbage collector.
+ * Values are stored in a ring of fixed-size segments which are either direct byte buffers or regions of a memory-mapped file.
+ * Ids are mapped to segments and positions using 64-bit arithmetic so the number of rows is not limited by the size of one buffer.
+ * In contrast to on-heap primitive column data (which has a validity bitmap), nulls are represented by sentinel values: NaN for double and the minimum value for long and int.
+ * Therefore these sentinel values cannot be stored as valid values (they are read as null).
+ * Segments of a file are stored in slots which are reused after the segments are removed so that the file does not grow if old records are removed.
+ * The file is closed by close() after which the data cannot be used anymore.
+ */
+public class ColumnDataOffHeap extends ColumnDataBase implements AutoCloseable {
+
+    public static final int DOUBLE = 0;
+    public static final int LONG = 1;
+    public static final int INTEGER = 2;
+
+    private final int type; // Type of values stored in this column
+    public int getType() {
+        return this.type;
+    }
+    private final int widthBits; // Log2 of the number of bytes for one value
+
+    //
+    // Data
+    //
+
+    private Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 16;
+
+    private final int segmentBits; // Number of values in one segment is a power of 2
+    private final int segmentMask;
+
+    private ByteBuffer[] segments; // Ring of segments. Its length is a power of 2.
+    private int firstSegment = 0; // Position of the first (oldest) segment in the ring
+    private int segmentCount = 0; // Number of allocated segments
+    private long[] slots; // Positions of the segments in the file (in segments) or -1 stored in the same ring as segments
+    private long segmentStartId; // Id stored in the first cell of the first segment
+
+    private final Path file; // If not null then segments are mapped to this file rather than allocated as direct buffers
+    private FileChannel channel;
+    private long slotCount = 0; // Number of segment slots in the file
+    private final TreeSet<Long> freeSlots = new TreeSet<>(); // Slots of removed segments (the smallest one is reused first)
+
+    private ByteBuffer segment(long id) {
+        long index = id - this.segmentStartId;
+        return this.segments[(this.firstSegment + (int)(index >>> this.segmentBits)) & (this.segments.length - 1)];
+    }
+    private int position(long id) {
+        return ((int)((id - this.segmentStartId) & this.segmentMask)) << this.widthBits;
+    }
+
+    private int segmentBytes() {
+        return (this.segmentMask + 1) << this.widthBits;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if(this.channel == null) {
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return this.channel;
+    }
+
+    private void allocateSegment() {
+        if(this.file == null) {
+            this.appendSegment(ByteBuffer.allocateDirect(this.segmentBytes()).order(ByteOrder.nativeOrder()), -1);
+            return;
+        }
+
+        long slot = this.freeSlots.isEmpty() ? this.slotCount++ : this.freeSlots.pollFirst();
+        try {
+            this.appendSegment(this.getChannel().map(FileChannel.MapMode.READ_WRITE, slot * this.segmentBytes(), this.segmentBytes()).order(ByteOrder.nativeOrder()), slot);
+        }
+        catch (IOException e) {
+            throw new BistroException(BistroErrorCode.GENERAL, "Error mapping column data file.", e.getMessage(), e);
+        }
+    }
+
+    private void releaseSegment() { // The first segment
+        long slot = this.slots[this.firstSegment];
+        this.segments[this.firstSegment] = null;
+        this.firstSegment = (this.firstSegment + 1) & (this.segments.length - 1);
+        this.segmentCount--;
+        this.segmentStartId += this.segmentMask + 1;
+        if(slot < 0) return;
+
+        // Free slots at the end of the file are truncated
+        this.freeSlots.add(slot);
+        long count = this.slotCount;
+        while(!this.freeSlots.isEmpty() && this.freeSlots.last() == this.slotCount - 1) {
+            this.freeSlots.pollLast();
+            this.slotCount--;
+        }
+        if(this.slotCount < count) this.truncate();
+    }
+
+    private void appendSegment(ByteBuffer segment, long slot) {
+        if(this.segmentCount == this.segments.length) { // Ring is full - grow it (only references to segments are copied)
+            ByteBuffer[] newSegments = new ByteBuffer[this.segments.length * 2];
+            long[] newSlots = new long[this.segments.length * 2];
+            for(int i = 0; i < this.segmentCount; i++) {
+                newSegments[i] = this.segments[(this.firstSegment + i) & (this.segments.length - 1)];
+                newSlots[i] = this.slots[(this.firstSegment + i) & (this.segments.length - 1)];
+            }
+            this.segments = newSegments;
+            this.slots = newSlots;
+            this.firstSegment = 0;
+        }
+        this.segments[(this.firstSegment + this.segmentCount) & (this.segments.length - 1)] = segment;
+        this.slots[(this.firstSegment + this.segmentCount) & (this.segments.length - 1)] = slot;
+        this.segmentCount++;
+    }
+
+    private void truncate() {
+        if(this.channel == null) return;
+        try {
+            this.channel.truncate(this.slotCount * this.segmentBytes());
+        }
+        catch (IOException e) {
+            throw new BistroException(BistroErrorCode.GENERAL, "Error truncating column data file.", e.getMessage(), e);
+        }
+    }
+
+    // Release all segments and close the file. The data cannot be used after closing
+    @Override
+    public void close() {
+        this.segments = new ByteBuffer[4];
+        this.slots = new long[4];
+        this.firstSegment = 0;
+        this.segmentCount = 0;
+        if(this.channel == null) return;
+        try {
+            this.channel.close();
+            this.channel = null;
+        }
+        catch (IOException e) {
+            throw new BistroException(BistroErrorCode.GENERAL, "Error closing column data file.", e.getMessage(), e);
+        }
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) {
+        ByteBuffer buffer = this.segment(id);
+        int pos = this.position(id);
+        switch(this.type) {
+            case DOUBLE:
+                double d = buffer.getDouble(pos);
+                return Double.isNaN(d) ? null : d;
+            case LONG:
+                long l = buffer.getLong(pos);
+                return l == ColumnDataLong.NULL ? null : l;
+            default:
+                int i = buffer.getInt(pos);
+                return i == ColumnDataInteger.NULL ? null : i;
+        }
+    }
+
+    @Override
+    public void setValue(long id, Object value) {
+        ByteBuffer buffer = this.segment(id);
+        int pos = this.position(id);
+        switch(this.type) {
+            case DOUBLE: buffer.putDouble(pos, ColumnDataDouble.toDouble(value)); break;
+            case LONG: buffer.putLong(pos, ColumnDataLong.toLong(value)); break;
+            default: buffer.putInt(pos, ColumnDataInteger.toInt(value)); break;
+        }
+    }
+
+    @Override
+    public double getDouble(long id) {
+        ByteBuffer buffer = this.segment(id);
+        int pos = this.position(id);
+        switch(this.type) {
+            case DOUBLE:
+                return buffer.getDouble(pos);
+            case LONG:
+                long l = buffer.getLong(pos);
+                return l == ColumnDataLong.NULL ? Double.NaN : (double)l;
+            default:
+                int i = buffer.getInt(pos);
+                return i == ColumnDataInteger.NULL ? Double.NaN : (double)i;
+        }
+    }
+    @Override
+    public void setDouble(long id, double value) {
+        if(this.type == DOUBLE) this.segment(id).putDouble(this.position(id), value);
+        else this.setValue(id, Double.isNaN(value) ? null : value);
+    }
+
+    @Override
+    public long getLong(long id) {
+        if(this.type == LONG) return this.segment(id).getLong(this.position(id));
+        Object value = this.getValue(id);
+        return value == null ? ColumnDataLong.NULL : ((Number)value).longValue();
+    }
+    @Override
+    public void setLong(long id, long value) {
+        if(this.type == LONG) this.segment(id).putLong(this.position(id), value);
+        else this.setValue(id, value == ColumnDataLong.NULL ? null : value);
+    }
+
+    @Override
+    public int getInt(long id) {
+        if(this.type == INTEGER) return this.segment(id).getInt(this.position(id));
+        Object value = this.getValue(id);
+        return value == null ? ColumnDataInteger.NULL : ((Number)value).intValue();
+    }
+    @Override
+    public void setInt(long id, int value) {
+        if(this.type == INTEGER) this.segment(id).putInt(this.position(id), value);
+        else this.setValue(id, value == ColumnDataInteger.NULL ? null : value);
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        for(long id = range.start; id < range.end; id++) {
+            this.setValue(id, value);
+        }
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.setValue(this.idRange, value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        // Allocate new segments at the end of the ring if necessary
+        long newEnd = this.idRange.end + count;
+        while(this.segmentStartId + ((long)this.segmentCount << this.segmentBits) < newEnd) {
+            this.allocateSegment();
+        }
+
+        // Initialize
+        Range added = new Range(this.idRange.end, newEnd);
+        this.idRange.end = newEnd;
+        this.setValue(added, this.defaultValue);
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        count = Math.min(count, this.idRange.getLength());
+        this.idRange.start += count;
+
+        // Release segments which do not store valid ids anymore
+        while(this.segmentCount > 0 && this.idRange.start - this.segmentStartId > this.segmentMask) {
+            this.releaseSegment();
+        }
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        this.segments = new ByteBuffer[4];
+        this.slots = new long[4];
+        this.firstSegment = 0;
+        this.segmentCount = 0;
+        this.segmentStartId = start;
+
+        // The file is written from the beginning
+        this.slotCount = 0;
+        this.freeSlots.clear();
+        this.truncate();
+
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        this.add(end - start);
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Segments are released when they are removed
+    }
+
+    @Override
+    protected int compare(long id, Object value) {
+        ByteBuffer buffer = this.segment(id);
+        int pos = this.position(id);
+        switch(this.type) {
+            case DOUBLE:
+                double d = buffer.getDouble(pos);
+                return Double.isNaN(d) ? 1 : Double.compare(d, ColumnDataDouble.toDouble(value));
+            case LONG:
+                long l = buffer.getLong(pos);
+                return l == ColumnDataLong.NULL ? 1 : Long.compare(l, ColumnDataLong.toLong(value));
+            default:
+                int i = buffer.getInt(pos);
+                return i == ColumnDataInteger.NULL ? 1 : Integer.compare(i, ColumnDataInteger.toInt(value));
+        }
+    }
+
+    //
+    // Creation
+    //
+
+    // Type of values stored in a column of the specified primitive type or -1 if it cannot be stored off-heap
+    public static int getType(String typeName) {
+        if(typeName.equalsIgnoreCase("Double")) return DOUBLE;
+        else if(typeName.equalsIgnoreCase("Long")) return LONG;
+        else if(typeName.equalsIgnoreCase("Integer")) return INTEGER;
+        else return -1;
+    }
+
+    public ColumnDataOffHeap(long start, long end, int type, int segmentSize, Path file) {
+        this.type = type;
+        this.widthBits = type == INTEGER ? 2 : 3;
+
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(segmentSize, 2) - 1); // Round up to a power of 2
+        this.segmentBits = bits;
+        this.segmentMask = (1 << bits) - 1;
+
+        this.file = file;
+
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+
+    public ColumnDataOffHeap(long start, long end, int type) {
+        this(start, end, type, DEFAULT_SEGMENT_SIZE, null);
+    }
+
+    // Create column data with the values of the specified ids stored in a file region (e.g., written by a snapshot) starting from the specified position.
+    // The region consists of whole segments which are mapped in private (copy-on-write) mode so that changes are not written to the file.
+    // Values are loaded by the operating system only when they are accessed. New segments are allocated as direct buffers.
+    public static ColumnDataOffHeap map(FileChannel channel, long position, ByteOrder order, long start, long end, int type, int segmentSize) throws IOException {
+        ColumnDataOffHeap data = new ColumnDataOffHeap(start, start, type, segmentSize, null);
+        int bytes = data.segmentBytes();
+        for(long id = start; id < end; id += data.segmentMask + 1) {
+            data.appendSegment(channel.map(FileChannel.MapMode.PRIVATE, position, bytes).order(order), -1);
+            position += bytes;
+        }
+        data.idRange.end = end;
+        return data;
+    }
+}
@@ -0,0 +1,197 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Range;
+
+/**
+ * Base class for column data which stores its output values in one primitive array (like double[] or long[]) instead of an array of boxed objects.
+ * It maps input ids to array offsets and grows or shrinks the array while the subclasses are responsible for the array itself.
+ * The array grows geometrically and free space in the beginning is reclaimed only if it is larger than the data, so appending and removing have constant amortized cost.
+ * Nulls are tracked in a validity bitmap maintained along with the array (null cells of the array store some special value of the subclass).
+ */
+public abstract class ColumnDataPrimitive extends ColumnDataBase {
+
+    //
+    // Data
+    //
+
+    protected Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    private static final int INITIAL_SIZE = 16;
+
+    protected int capacity = 0; // Size of the allocated array
+
+    protected int startIdOffset = 0; // Cell of the array the start id is stored
+
+    protected int id2offset(long id) {
+        return this.startIdOffset + ((int) (id - this.idRange.start));
+    }
+    protected long offset2id(int offset) {
+        return this.idRange.start + (offset - this.startIdOffset);
+    }
+
+    protected ValidityBitmap validity = new ValidityBitmap(0); // Set bits mean non-null values in the corresponding cells
+
+    // Allocate a new array of the specified size and copy the specified interval of the old array to its beginning
+    protected abstract void resize(int from, int length, int newCapacity);
+
+    // Write the specified value into the cells of the interval [from, to)
+    protected abstract void fill(int from, int to, Object value);
+
+    private void reallocate(int from, int length, int newCapacity) {
+        this.resize(from, length, newCapacity);
+        this.validity.resize(from, length, newCapacity);
+    }
+
+    // Whether the value is stored as null
+    protected boolean isNullValue(Object value) {
+        return value == null;
+    }
+
+    private void fillValues(int from, int to, Object value) {
+        this.fill(from, to, value);
+        this.validity.set(from, to, !this.isNullValue(value));
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public void setValue(Range range, Object value) {
+        this.fillValues(this.id2offset(range.start), this.id2offset(range.end), value);
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.fillValues(this.startIdOffset, (int)(this.startIdOffset + this.idRange.getLength()), value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+    }
+
+    protected Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Nulls
+    //
+
+    @Override
+    public boolean isNull(long id) {
+        return !this.validity.get(this.id2offset(id));
+    }
+
+    @Override
+    public long countNulls(Range range) {
+        return range.getLength() - this.validity.count(this.id2offset(range.start), this.id2offset(range.end));
+    }
+
+    @Override
+    public long nextNull(long from, long to) {
+        return this.offset2id(this.validity.next(this.id2offset(from), this.id2offset(to), false));
+    }
+
+    @Override
+    public long nextValid(long from, long to) {
+        return this.offset2id(this.validity.next(this.id2offset(from), this.id2offset(to), true));
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        int length = (int)this.idRange.getLength();
+
+        // Check if not enough space and allocate more if necessary
+        if(this.startIdOffset + length + count > this.capacity) {
+            int newCapacity = Math.max(INITIAL_SIZE, Math.max(length + (int)count, 2 * length)); // Grow geometrically
+            this.reallocate(this.startIdOffset, length, newCapacity);
+            this.startIdOffset = 0;
+            this.capacity = newCapacity;
+        }
+
+        // Initialize
+        int start = this.id2offset(this.idRange.end);
+        this.fillValues(start, start + (int)count, this.defaultValue);
+
+        this.idRange.end += count;
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        count = Math.min(count, this.idRange.getLength());
+
+        this.startIdOffset += count;
+        this.idRange.start += count;
+
+        this.gc();
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        // Allocate memory
+        this.reallocate(0, 0, INITIAL_SIZE);
+        this.capacity = INITIAL_SIZE;
+        this.startIdOffset = 0;
+
+        // Initially no data but the ids start from what is specified in parameters
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        // Now the end will move and space will be added if necessary
+        this.add(end - start);
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Free the space in the beginning of the array if it is larger than the space used by data
+        int length = (int)this.idRange.getLength();
+        if(this.startIdOffset > INITIAL_SIZE && this.startIdOffset > length) {
+            int newCapacity = Math.max(INITIAL_SIZE, 2 * length);
+            this.reallocate(this.startIdOffset, length, newCapacity);
+            this.startIdOffset = 0;
+            this.capacity = newCapacity;
+        }
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataPrimitive() {
+        super();
+    }
+}
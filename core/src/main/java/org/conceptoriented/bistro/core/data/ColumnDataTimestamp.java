@@ -0,0 +1,304 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Range;
+
+import java.time.Instant;
+
+/**
+ * Column data storing time stamps (Instant values) as nanoseconds since the epoch in compressed blocks.
+ * Each full block is sealed by encoding its values as deltas from the block minimum (frame of reference) packed with the minimum number of bits.
+ * For monotone time stamps with a regular rate this takes a few bits per value instead of an object with two fields.
+ * The last block is not sealed so that appending is fast. A sealed block is unpacked if one of its values is changed and sealed again later.
+ * Like chunked column data, the blocks form a ring so that old blocks are released when records are removed.
+ */
+public class ColumnDataTimestamp extends ColumnDataBase {
+
+    public static final long NULL = Long.MIN_VALUE; // Null as nanoseconds
+
+    private static final int BLOCK_SIZE = 1024; // Has to be a power of 2 (ids are mapped to blocks by shifts)
+
+    private static final int MAX_BITS = 56; // Blocks with wider deltas are not sealed
+
+    protected static long toNanos(Object value) {
+        if(value == null) return NULL;
+        if(value instanceof Instant) {
+            Instant instant = (Instant)value;
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+        }
+        return toNumber(value).longValue();
+    }
+
+    protected static Instant toInstant(long nanos) {
+        if(nanos == NULL) return null;
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+
+    /**
+     * Values of one block either as an array or packed.
+     */
+    protected static class Block {
+        long[] raw; // Not null if not sealed
+
+        long base; // Minimum non-null value
+        int bits; // Number of bits for one code. Code 0 means null and other codes are deltas from the base plus 1
+        long[] packed;
+
+        long get(int cell) {
+            if(this.raw != null) return this.raw[cell];
+
+            long bitPos = (long)cell * this.bits;
+            int word = (int)(bitPos >>> 6);
+            int shift = (int)(bitPos & 63);
+            long code = this.packed[word] >>> shift;
+            if(shift + this.bits > 64) code |= this.packed[word + 1] << (64 - shift);
+            code &= (1L << this.bits) - 1;
+            return code == 0 ? NULL : this.base + code - 1;
+        }
+
+        void set(int cell, long value) {
+            if(this.raw == null) this.unseal();
+            this.raw[cell] = value;
+        }
+
+        void seal() {
+            if(this.raw == null) return;
+
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for(long value : this.raw) {
+                if(value == NULL) continue;
+                if(value < min) min = value;
+                if(value > max) max = value;
+            }
+            if(min > max) min = max = 0; // All nulls
+
+            long range = max - min + 1; // Code of the largest value
+            if(range <= 0) return; // Overflow
+            int bits = 64 - Long.numberOfLeadingZeros(range);
+            if(bits > MAX_BITS) return;
+
+            long[] packed = new long[(this.raw.length * bits + 63) / 64 + 1];
+            for(int cell = 0; cell < this.raw.length; cell++) {
+                long code = this.raw[cell] == NULL ? 0 : this.raw[cell] - min + 1;
+                long bitPos = (long)cell * bits;
+                int word = (int)(bitPos >>> 6);
+                int shift = (int)(bitPos & 63);
+                packed[word] |= code << shift;
+                if(shift + bits > 64) packed[word + 1] |= code >>> (64 - shift);
+            }
+
+            this.base = min;
+            this.bits = bits;
+            this.packed = packed;
+            this.raw = null;
+        }
+
+        void unseal() {
+            long[] raw = new long[BLOCK_SIZE];
+            for(int cell = 0; cell < raw.length; cell++) {
+                raw[cell] = this.get(cell);
+            }
+            this.raw = raw;
+            this.packed = null;
+        }
+
+        Block() {
+            this.raw = new long[BLOCK_SIZE];
+        }
+    }
+
+    //
+    // Data
+    //
+
+    private Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    private final int blockBits = Integer.numberOfTrailingZeros(BLOCK_SIZE);
+    private final int blockMask = BLOCK_SIZE - 1;
+
+    private Block[] blocks; // Ring of blocks. Its length is a power of 2.
+    private int firstBlock = 0; // Position of the first (oldest) block in the ring
+    private int blockCount = 0; // Number of allocated blocks
+    private long blockStartId; // Id stored in the first cell of the first block
+
+    private Block block(long id) {
+        long index = id - this.blockStartId;
+        return this.blocks[(this.firstBlock + (int)(index >>> this.blockBits)) & (this.blocks.length - 1)];
+    }
+    private int cell(long id) {
+        return (int)((id - this.blockStartId) & this.blockMask);
+    }
+
+    // Seal all blocks except for the last one
+    protected void seal() {
+        for(int i = 0; i < this.blockCount - 1; i++) {
+            this.blocks[(this.firstBlock + i) & (this.blocks.length - 1)].seal();
+        }
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) { return toInstant(this.block(id).get(this.cell(id))); }
+
+    @Override
+    public void setValue(long id, Object value) { this.block(id).set(this.cell(id), toNanos(value)); }
+
+    @Override
+    public long getLong(long id) { return this.block(id).get(this.cell(id)); }
+
+    @Override
+    public void setLong(long id, long value) { this.block(id).set(this.cell(id), value); }
+
+    // Nanoseconds of current dates are larger than 2^53 so they lose precision as doubles (about 256 nanoseconds). Use getLong for exact values and differences.
+    @Override
+    public double getDouble(long id) {
+        long value = this.getLong(id);
+        return value == NULL ? Double.NaN : (double)value;
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        long nanos = toNanos(value);
+        for(long id = range.start; id < range.end; id++) {
+            this.block(id).set(this.cell(id), nanos);
+        }
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.setValue(this.idRange, value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        // Allocate new blocks at the end of the ring if necessary
+        long newEnd = this.idRange.end + count;
+        while(this.blockStartId + ((long)this.blockCount << this.blockBits) < newEnd) {
+            if(this.blockCount == this.blocks.length) { // Ring is full - grow it (only references to blocks are copied)
+                Block[] newBlocks = new Block[this.blocks.length * 2];
+                for(int i = 0; i < this.blockCount; i++) {
+                    newBlocks[i] = this.blocks[(this.firstBlock + i) & (this.blocks.length - 1)];
+                }
+                this.blocks = newBlocks;
+                this.firstBlock = 0;
+            }
+            if(this.blockCount > 0 && this.idRange.end - this.blockStartId >= ((long)this.blockCount << this.blockBits)) { // Previous block is full
+                this.blocks[(this.firstBlock + this.blockCount - 1) & (this.blocks.length - 1)].seal();
+            }
+            this.blocks[(this.firstBlock + this.blockCount) & (this.blocks.length - 1)] = new Block();
+            this.blockCount++;
+        }
+
+        // Initialize
+        Range added = new Range(this.idRange.end, newEnd);
+        this.idRange.end = newEnd;
+        this.setValue(added, this.defaultValue);
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        count = Math.min(count, this.idRange.getLength());
+        this.idRange.start += count;
+
+        // Release blocks which do not store valid ids anymore
+        while(this.blockCount > 0 && this.idRange.start - this.blockStartId > this.blockMask) {
+            this.blocks[this.firstBlock] = null;
+            this.firstBlock = (this.firstBlock + 1) & (this.blocks.length - 1);
+            this.blockCount--;
+            this.blockStartId += this.blockMask + 1;
+        }
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        this.blocks = new Block[4];
+        this.firstBlock = 0;
+        this.blockCount = 0;
+        this.blockStartId = start;
+
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        this.add(end - start);
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Seal blocks which have been unpacked because of changes
+        this.seal();
+    }
+
+    //
+    // Search
+    //
+
+    @Override
+    protected int compare(long id, Object value) {
+        long val = this.getLong(id);
+        if(val == NULL) return 1;
+        return Long.compare(val, toNanos(value));
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    @Override
+    public void resetChanged() { // Changes have been processed so changed blocks are sealed again
+        super.resetChanged();
+        this.seal();
+    }
+
+    //
+    // Creation
+    //
+
+    public ColumnDataTimestamp(long start, long end) {
+        this.reset(start, end);
+        this.setChangedAt(0); // Very old - need to be evaluated
+    }
+}
@@ -0,0 +1,179 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Column;
+import org.conceptoriented.bistro.core.ColumnData;
+import org.conceptoriented.bistro.core.Range;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash index mapping values of the specified (key) columns to ids of a table.
+ * For each combination of values, it stores the smallest id having these values (the same record is found by scanning the table).
+ * If this record has been removed then the index is rebuilt because other records with these values could still exist.
+ * Newly added records are indexed when the index is used next time because their values are normally set after they are added.
+ * Values of already indexed records are changed either via the table data (setValues) or directly in the column data with registering the changes (setChanged).
+ * Registered changes are indexed when the index is used next time. Records found are checked so that values changed without registering them never produce wrong ids.
+ * The index can be used by columns evaluated in parallel (e.g., link columns) so its methods are synchronized.
+ */
+public class HashIndex {
+
+    private final List<Column> columns;
+    public List<Column> getColumns() {
+        return this.columns;
+    }
+
+    private final Map<Object, Long> ids = new HashMap<>();
+
+    private long indexedEnd = 0; // All ids less than this one have been indexed
+    public long getIndexedEnd() {
+        return this.indexedEnd;
+    }
+
+    private boolean valid = false; // If false then the index will be rebuilt next time it is used
+
+    // Column data and their change time when the index was last updated (changes registered later have to be indexed)
+    private final ColumnData[] data;
+    private final long[] changedAt;
+
+    private static final Object NONE = new Object(); // Key of values which cannot be stored in the columns
+
+    // Values of dictionary-encoded columns are represented by their codes
+    protected Object getKey(int column, long id) {
+        ColumnData data = this.columns.get(column).getData();
+        if(data instanceof ColumnDataDictionary) {
+            return ((ColumnDataDictionary)data).getCode(id);
+        }
+        return data.getValue(id);
+    }
+    protected Object getKey(int column, Object value) {
+        ColumnData data = this.columns.get(column).getData();
+        if(data instanceof ColumnDataDictionary) {
+            int code = ((ColumnDataDictionary)data).getDictionary().getCode(value);
+            return code == ColumnDataDictionary.NONE ? NONE : code;
+        }
+        return value;
+    }
+
+    // Key is the value itself for one column and a list of values for many columns
+    protected Object getKey(long id) {
+        if(this.columns.size() == 1) {
+            return this.getKey(0, id);
+        }
+        List<Object> key = new ArrayList<>(this.columns.size());
+        for(int i = 0; i < this.columns.size(); i++) {
+            key.add(this.getKey(i, id));
+        }
+        return key;
+    }
+    protected Object getKey(List<Object> values) {
+        if(this.columns.size() == 1) {
+            return this.getKey(0, values.get(0));
+        }
+        List<Object> key = new ArrayList<>(this.columns.size());
+        for(int i = 0; i < this.columns.size(); i++) {
+            Object k = this.getKey(i, values.get(i));
+            if(k == NONE) return NONE;
+            key.add(k);
+        }
+        return key;
+    }
+
+    // Index records which have been added or changed since the last update
+    public synchronized void update(Range idRange) {
+        List<Range> changedRanges = new ArrayList<>();
+        for(int i = 0; i < this.columns.size(); i++) {
+            ColumnData columnData = this.columns.get(i).getData();
+            if(columnData != this.data[i]) { // New data object (e.g., another storage)
+                this.data[i] = columnData;
+                this.changedAt[i] = columnData.getChangedAt();
+                this.valid = false;
+                continue;
+            }
+            if(columnData.getChangedAt() == this.changedAt[i]) continue;
+            this.changedAt[i] = columnData.getChangedAt();
+            if(columnData.isChanged()) this.valid = false; // Changes cannot be restricted to some records
+            else changedRanges.addAll(columnData.getChangedRanges());
+        }
+
+        if(!this.valid || this.ids.size() > 2 * idRange.getLength() + 16) { // Rebuild (also to free entries of removed records)
+            this.ids.clear();
+            this.indexedEnd = idRange.start;
+            this.valid = true;
+        }
+        if(this.indexedEnd < idRange.start) {
+            this.indexedEnd = idRange.start;
+        }
+
+        // Changed records get their new keys (entries of their old keys are detected when they are found)
+        for(Range range : changedRanges) {
+            for(long i = Math.max(range.start, idRange.start); i < Math.min(range.end, this.indexedEnd); i++) {
+                Object key = this.getKey(i);
+                Long id = this.ids.get(key);
+                if(id == null || id > i || id < idRange.start) this.ids.put(key, i);
+            }
+        }
+
+        for(long i = this.indexedEnd; i < idRange.end; i++) {
+            this.ids.putIfAbsent(this.getKey(i), i);
+        }
+        this.indexedEnd = idRange.end;
+    }
+
+    public synchronized long find(List<Object> values, Range idRange) {
+        this.update(idRange);
+
+        Object key = this.getKey(values);
+        if(key == NONE) {
+            return -1;
+        }
+        Long id = this.ids.get(key);
+        if(id == null) {
+            return -1;
+        }
+        if(id < idRange.start || !Objects.equals(this.getKey(id), key)) { // Removed record or its values have been changed. Other records with these values could exist
+            this.valid = false;
+            this.update(idRange);
+            id = this.ids.get(key);
+            if(id == null) {
+                return -1;
+            }
+        }
+        return id;
+    }
+
+    // Values of the record are going to be changed (the key of the record is still old)
+    public synchronized void beforeUpdate(long id) {
+        if(id >= this.indexedEnd) return; // Not indexed yet
+        Object oldKey = this.getKey(id);
+        Long oldId = this.ids.get(oldKey);
+        if(oldId != null && oldId == id) {
+            this.valid = false; // Records with larger ids and the same values could exist so we rebuild the index
+        }
+    }
+
+    // Values of the record have been changed (the key of the record is new)
+    public synchronized void afterUpdate(long id) {
+        if(id >= this.indexedEnd || !this.valid) return; // Not indexed yet or will be rebuilt
+        Object newKey = this.getKey(id);
+        Long newId = this.ids.get(newKey);
+        if(newId == null || newId > id) {
+            this.ids.put(newKey, id);
+        }
+    }
+
+    public synchronized void reset() {
+        this.ids.clear();
+        this.indexedEnd = 0;
+        this.valid = false;
+    }
+
+    public HashIndex(List<Column> columns) {
+        this.columns = new ArrayList<>(columns);
+        this.data = new ColumnData[columns.size()];
+        this.changedAt = new long[columns.size()];
+    }
+}
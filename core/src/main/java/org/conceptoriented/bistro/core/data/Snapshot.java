@@ -0,0 +1,402 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of the data of a schema stored in a binary file in columnar format.
+ * It stores id ranges (including added and removed ranges) of all tables and the data of all their columns (including derived columns).
+ * A snapshot is read into a schema with the same tables and columns (normally created by the same code) which then does not need to be re-evaluated.
+ * The only exception are accumulate and roll columns whose operations keep state between evaluations which is not stored. They are fully re-evaluated once after reading.
+ * Numeric columns are stored as a validity bitmap followed by an array of primitive values (with special values in null cells).
+ * They are restored into the column data created by the storage provider of the column. Off-heap column data of the same type is memory-mapped so that its data is loaded only when it is accessed
+ * (off-heap data represents nulls by the special values so that these values cannot be valid in mapped columns).
+ * Other columns are stored as a sequence of tagged values and are read into the existing column data.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x4253534E; // BSSN
+    private static final int VERSION = 2;
+
+    private static final byte OBJECTS = -1; // Column data kind (other kinds are types of off-heap column data)
+
+    private static final byte NULL = 0; // Value tags
+    private static final byte DOUBLE = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte STRING = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte INSTANT = 6;
+    private static final byte LOCALDATE = 7;
+
+    private Schema schema;
+
+    //
+    // Write
+    //
+
+    public void write(Path file) {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+
+            List<Table> tables = this.getTables();
+            out.put((byte)(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0)); // All values are written in native order
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(tables.size());
+
+            for(Table table : tables) {
+                out.putString(table.getName());
+                TableData data = table.getData();
+                out.putLong(data.getAddedRange().start);
+                out.putLong(data.getAddedRange().end);
+                out.putLong(data.getRemovedRange().start);
+                out.putLong(data.getRemovedRange().end);
+
+                List<Column> columns = table.getColumns();
+                out.putInt(columns.size());
+                for(Column column : columns) {
+                    out.putString(column.getName());
+                    this.writeData(out, column.getData());
+                }
+            }
+
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new BistroException(BistroErrorCode.GENERAL, "Error writing snapshot.", e.getMessage(), e);
+        }
+    }
+
+    protected void writeData(Output out, ColumnData data) throws IOException {
+        byte kind = getKind(data);
+        Range range = data.getIdRange();
+        out.put(kind);
+        out.putLong(range.start);
+        out.putLong(range.end);
+
+        if(kind == OBJECTS) {
+            for(long id = range.start; id < range.end; id++) {
+                this.writeValue(out, data.getValue(id));
+            }
+            return;
+        }
+
+        // Numeric values are stored in whole segments (aligned) so that they can be mapped as segments of off-heap column data
+        int segmentSize = (int)Math.min(ColumnDataOffHeap.DEFAULT_SEGMENT_SIZE, Math.max(16, Long.highestOneBit(Math.max(1, range.getLength() - 1)) << 1));
+        long segments = (range.getLength() + segmentSize - 1) / segmentSize;
+        out.putInt(segmentSize);
+
+        // Validity is stored separately because the special values representing nulls in the array can be valid values
+        for(long id = range.start; id < range.end; id += 64) {
+            long bits = 0;
+            for(int i = 0; i < 64 && id + i < range.end; i++) {
+                if(!data.isNull(id + i)) bits |= 1L << i;
+            }
+            out.putLong(bits);
+        }
+        out.align(8);
+
+        for(long id = range.start; id < range.start + segments * segmentSize; id++) {
+            boolean valid = id < range.end;
+            switch(kind) {
+                case ColumnDataOffHeap.DOUBLE: out.putDouble(valid ? data.getDouble(id) : Double.NaN); break;
+                case ColumnDataOffHeap.LONG: out.putLong(valid ? data.getLong(id) : ColumnDataLong.NULL); break;
+                default: out.putInt(valid ? data.getInt(id) : ColumnDataInteger.NULL); break;
+            }
+        }
+    }
+
+    protected void writeValue(Output out, Object value) throws IOException {
+        if(value == null) {
+            out.put(NULL);
+        }
+        else if(value instanceof Double) {
+            out.put(DOUBLE);
+            out.putDouble((Double)value);
+        }
+        else if(value instanceof Long) {
+            out.put(LONG);
+            out.putLong((Long)value);
+        }
+        else if(value instanceof Integer) {
+            out.put(INTEGER);
+            out.putInt((Integer)value);
+        }
+        else if(value instanceof String) {
+            out.put(STRING);
+            out.putString((String)value);
+        }
+        else if(value instanceof Boolean) {
+            out.put(BOOLEAN);
+            out.put((byte)((Boolean)value ? 1 : 0));
+        }
+        else if(value instanceof Instant) {
+            out.put(INSTANT);
+            out.putLong(((Instant)value).getEpochSecond());
+            out.putInt(((Instant)value).getNano());
+        }
+        else if(value instanceof LocalDate) {
+            out.put(LOCALDATE);
+            out.putLong(((LocalDate)value).toEpochDay());
+        }
+        else {
+            throw new BistroException(BistroErrorCode.GENERAL, "Value cannot be written to snapshot.", "Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    // Numeric type of the data or OBJECTS
+    protected static byte getKind(ColumnData data) {
+        if(data instanceof ColumnDataDouble) return ColumnDataOffHeap.DOUBLE;
+        else if(data instanceof ColumnDataLong) return ColumnDataOffHeap.LONG;
+        else if(data instanceof ColumnDataInteger) return ColumnDataOffHeap.INTEGER;
+        else if(data instanceof ColumnDataOffHeap) return (byte)((ColumnDataOffHeap)data).getType();
+        else return OBJECTS;
+    }
+
+    //
+    // Read
+    //
+
+    public void read(Path file) {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) { // Private mapping requires write access (the file is not changed)
+            Input in = new Input(channel);
+
+            ByteOrder order = in.get() == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            in.order(order);
+            if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new BistroException(BistroErrorCode.GENERAL, "Error reading snapshot.", "Wrong file format or version.");
+            }
+
+            List<TableData> changedTables = new ArrayList<>();
+            List<ColumnData> columnData = new ArrayList<>();
+            List<ColumnData> statefulData = new ArrayList<>();
+            List<TableData> tableData = new ArrayList<>();
+
+            int tableCount = in.getInt();
+            for(int t = 0; t < tableCount; t++) {
+                String tableName = in.getString();
+                Table table = this.schema.getTable(tableName);
+                if(table == null) {
+                    throw new BistroException(BistroErrorCode.NAME_RESOLUTION_ERROR, "Error reading snapshot.", "Table not found: " + tableName);
+                }
+
+                Range addedRange = new Range(in.getLong(), in.getLong());
+                Range removedRange = new Range(in.getLong(), in.getLong());
+                table.getData().restore(addedRange, removedRange);
+                if(table.getData().isChanged()) changedTables.add(table.getData());
+                else tableData.add(table.getData());
+
+                // Columns with equal names are matched in the order of their creation
+                List<Column> columns = new ArrayList<>(table.getColumns());
+                int columnCount = in.getInt();
+                for(int c = 0; c < columnCount; c++) {
+                    String columnName = in.getString();
+                    Column column = columns.stream().filter(x -> x.getName().equals(columnName)).findFirst().orElse(null);
+                    if(column == null) {
+                        throw new BistroException(BistroErrorCode.NAME_RESOLUTION_ERROR, "Error reading snapshot.", "Column not found: " + columnName);
+                    }
+                    columns.remove(column);
+
+                    this.readData(in, channel, order, column);
+                    if(column.getOperationType() == OperationType.ACCUMULATE || column.getOperationType() == OperationType.ROLL) statefulData.add(column.getData());
+                    else columnData.add(column.getData());
+                }
+            }
+
+            // All restored elements are up-to-date (not dirty) except for tables with not yet evaluated changes
+            long changedAt = System.nanoTime();
+            tableData.forEach(x -> x.setChangedAt(changedAt));
+            columnData.forEach(x -> { x.resetChanged(); x.setChangedAt(changedAt); });
+            changedTables.forEach(x -> x.setChangedAt(changedAt + 1));
+            statefulData.forEach(x -> { x.resetChanged(); x.setChangedAt(0); }); // Very old - have to be evaluated again in order to restore the state of their operations
+        }
+        catch (IOException e) {
+            throw new BistroException(BistroErrorCode.GENERAL, "Error reading snapshot.", e.getMessage(), e);
+        }
+    }
+
+    protected void readData(Input in, FileChannel channel, ByteOrder order, Column column) throws IOException {
+        byte kind = in.get();
+        long start = in.getLong();
+        long end = in.getLong();
+
+        if(kind == OBJECTS) {
+            ColumnData data = column.getData();
+            data.reset(start, end);
+            for(long id = start; id < end; id++) {
+                data.setValue(id, this.readValue(in));
+            }
+            return;
+        }
+
+        int segmentSize = in.getInt();
+        long[] validity = new long[(int)((end - start + 63) / 64)];
+        for(int i = 0; i < validity.length; i++) {
+            validity[i] = in.getLong();
+        }
+        in.align(8);
+        long segments = (end - start + segmentSize - 1) / segmentSize;
+
+        ColumnData data = column.getStorageProvider().createColumnData(column, start, end);
+        data.setDefaultValue(column.getData().getDefaultValue());
+
+        if(data instanceof ColumnDataOffHeap && ((ColumnDataOffHeap)data).getType() == kind) {
+            // Map the values instead of reading them
+            ColumnDataOffHeap mapped = ColumnDataOffHeap.map(channel, in.position(), order, start, end, kind, segmentSize);
+            mapped.setDefaultValue(data.getDefaultValue());
+            column.setData(mapped);
+            in.skip(segments * segmentSize * (kind == ColumnDataOffHeap.INTEGER ? 4 : 8));
+            return;
+        }
+
+        for(long id = start; id < end; id++) {
+            int i = (int)(id - start);
+            boolean valid = (validity[i >>> 6] & (1L << i)) != 0;
+            switch(kind) {
+                case ColumnDataOffHeap.DOUBLE:
+                    double d = in.getDouble();
+                    if(valid) data.setDouble(id, d); else data.setNull(id);
+                    break;
+                case ColumnDataOffHeap.LONG:
+                    long l = in.getLong();
+                    if(!valid) data.setNull(id);
+                    else if(l == ColumnDataLong.NULL) data.setValue(id, l); // Typed accessors would store null
+                    else data.setLong(id, l);
+                    break;
+                default:
+                    int n = in.getInt();
+                    if(!valid) data.setNull(id);
+                    else if(n == ColumnDataInteger.NULL) data.setValue(id, n);
+                    else data.setInt(id, n);
+                    break;
+            }
+        }
+        in.skip((start + segments * segmentSize - end) * (kind == ColumnDataOffHeap.INTEGER ? 4 : 8)); // Unused cells of the last segment
+        column.setData(data);
+    }
+
+    protected Object readValue(Input in) throws IOException {
+        byte tag = in.get();
+        switch(tag) {
+            case NULL: return null;
+            case DOUBLE: return in.getDouble();
+            case LONG: return in.getLong();
+            case INTEGER: return in.getInt();
+            case STRING: return in.getString();
+            case BOOLEAN: return in.get() == 1;
+            case INSTANT: return Instant.ofEpochSecond(in.getLong(), in.getInt());
+            case LOCALDATE: return LocalDate.ofEpochDay(in.getLong());
+            default: throw new BistroException(BistroErrorCode.GENERAL, "Error reading snapshot.", "Unknown value tag: " + tag);
+        }
+    }
+
+    protected List<Table> getTables() {
+        List<Table> tables = new ArrayList<>();
+        for(Table table : this.schema.getTables()) {
+            if(table.isPrimitive()) continue;
+            tables.add(table);
+        }
+        return tables;
+    }
+
+    //
+    // Buffered sequential access to the file
+    //
+
+    protected static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+        private long position = 0; // Position of the start of the buffer in the file
+
+        void ensure(int bytes) throws IOException {
+            if(this.buffer.remaining() < bytes) this.flush();
+        }
+        void flush() throws IOException {
+            this.buffer.flip();
+            while(this.buffer.hasRemaining()) {
+                this.position += this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+        void align(int bytes) throws IOException {
+            while((this.position + this.buffer.position()) % bytes != 0) this.put((byte)0);
+        }
+
+        void put(byte value) throws IOException { this.ensure(1); this.buffer.put(value); }
+        void putInt(int value) throws IOException { this.ensure(4); this.buffer.putInt(value); }
+        void putLong(long value) throws IOException { this.ensure(8); this.buffer.putLong(value); }
+        void putDouble(double value) throws IOException { this.ensure(8); this.buffer.putDouble(value); }
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.putInt(bytes.length);
+            for(byte b : bytes) this.put(b);
+        }
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    protected static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position = 0; // Position of the start of the buffer in the file
+
+        long position() {
+            return this.position + this.buffer.position();
+        }
+        void order(ByteOrder order) {
+            this.buffer.order(order);
+        }
+        void ensure(int bytes) throws IOException {
+            if(this.buffer.remaining() >= bytes) return;
+            this.position += this.buffer.position();
+            this.buffer.compact();
+            while(this.buffer.position() < bytes) {
+                if(this.channel.read(this.buffer, this.position + this.buffer.position()) < 0) {
+                    throw new BistroException(BistroErrorCode.GENERAL, "Error reading snapshot.", "Unexpected end of file.");
+                }
+            }
+            this.buffer.flip();
+        }
+        void skip(long bytes) {
+            long newPosition = this.position() + bytes;
+            this.buffer.clear().flip(); // Empty
+            this.position = newPosition;
+        }
+        void align(int bytes) throws IOException {
+            while(this.position() % bytes != 0) this.get();
+        }
+
+        byte get() throws IOException { this.ensure(1); return this.buffer.get(); }
+        int getInt() throws IOException { this.ensure(4); return this.buffer.getInt(); }
+        long getLong() throws IOException { this.ensure(8); return this.buffer.getLong(); }
+        double getDouble() throws IOException { this.ensure(8); return this.buffer.getDouble(); }
+        String getString() throws IOException {
+            byte[] bytes = new byte[this.getInt()];
+            for(int i = 0; i < bytes.length; i++) bytes[i] = this.get();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            this.buffer.flip(); // Empty
+        }
+    }
+
+    public Snapshot(Schema schema) {
+        this.schema = schema;
+    }
+}
@@ -0,0 +1,189 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Column;
+import org.conceptoriented.bistro.core.ColumnData;
+import org.conceptoriented.bistro.core.Range;
+
+import java.util.Arrays;
+
+/**
+ * Sorted index storing ids of a table ordered by the values of one column (and by ids for equal values).
+ * It is used for columns which are not sorted themselves (otherwise the column data can be searched directly).
+ * Newly added records are indexed when the index is used next time by appending them (if their values are greater than the existing values) or by merging them into the existing ids.
+ * Removed records are skipped when searching and their entries are freed when the index is rebuilt.
+ * Nulls are treated as greater than any value like in the search methods of column data.
+ */
+public class SortedIndex {
+
+    private final Column column;
+    public Column getColumn() {
+        return this.column;
+    }
+
+    private long[] ids = new long[16]; // Ids ordered by their values
+    private int size = 0;
+    private long[] buffer; // Previous array of ids used as a target of merges
+
+    private long indexedEnd = 0; // All ids less than this one have been indexed
+    public long getIndexedEnd() {
+        return this.indexedEnd;
+    }
+
+    private boolean valid = false; // If false then the index will be rebuilt next time it is used
+
+    @SuppressWarnings("unchecked")
+    protected int compare(long id1, long id2) {
+        ColumnData data = this.column.getData();
+        Object val1 = data.getValue(id1);
+        Object val2 = data.getValue(id2);
+        int cmp;
+        if(val1 == null) cmp = val2 == null ? 0 : 1;
+        else if(val2 == null) cmp = -1;
+        else cmp = ((Comparable)val1).compareTo(val2);
+        return cmp != 0 ? cmp : Long.compare(id1, id2);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected int compare(long id, Object value) {
+        Object val = this.column.getData().getValue(id);
+        if(val == null) return 1;
+        return ((Comparable)val).compareTo(value);
+    }
+
+    // Sort ids of the specified range by their values (ids of values which are already in order, like time stamps, are not sorted)
+    protected long[] sort(long start, long end) {
+        long[] sorted = new long[(int)(end - start)];
+        boolean ordered = true;
+        for(int i = 0; i < sorted.length; i++) {
+            sorted[i] = start + i;
+            if(ordered && i > 0 && this.compare(sorted[i - 1], sorted[i]) > 0) ordered = false;
+        }
+        if(!ordered) {
+            this.sort(sorted, new long[sorted.length], 0, sorted.length);
+        }
+        return sorted;
+    }
+
+    // Merge sort of primitive ids in [from, to) by their values using the buffer of the same length
+    protected void sort(long[] ids, long[] buffer, int from, int to) {
+        if(to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        this.sort(ids, buffer, from, mid);
+        this.sort(ids, buffer, mid, to);
+        if(this.compare(ids[mid - 1], ids[mid]) < 0) return; // Already in order
+
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int i = from, j = mid, k = from;
+        while(i < mid && j < to) {
+            ids[k++] = this.compare(buffer[i], buffer[j]) < 0 ? buffer[i++] : buffer[j++];
+        }
+        while(i < mid) ids[k++] = buffer[i++];
+        while(j < to) ids[k++] = buffer[j++];
+    }
+
+    // Array of at least the specified length. It grows geometrically so that appending is amortized
+    protected long[] allocate(long[] array, int length) {
+        if(array != null && array.length >= length) return array;
+        int capacity = array == null ? 16 : array.length;
+        while(capacity < length) capacity += capacity >> 1;
+        return new long[capacity];
+    }
+
+    // Index records which have been added since the last update
+    public synchronized void update(Range idRange) {
+        if(!this.valid || this.size > 2 * idRange.getLength() + 16) { // Rebuild (also to free entries of removed records)
+            this.size = 0;
+            this.indexedEnd = idRange.start;
+            this.valid = true;
+        }
+        if(this.indexedEnd < idRange.start) {
+            this.indexedEnd = idRange.start;
+        }
+        if(this.indexedEnd >= idRange.end) {
+            return;
+        }
+
+        long[] added = this.sort(this.indexedEnd, idRange.end);
+
+        // Entries of removed ids at the end are freed
+        while(this.size > 0 && this.ids[this.size - 1] < idRange.start) {
+            this.size--;
+        }
+
+        if(this.size == 0 || this.compare(this.ids[this.size - 1], added[0]) < 0) {
+            // New values are greater than the existing values (e.g., a monotone column) and hence they are appended
+            long[] appended = this.allocate(this.ids, this.size + added.length);
+            if(appended != this.ids) System.arraycopy(this.ids, 0, appended, 0, this.size);
+            System.arraycopy(added, 0, appended, this.size, added.length);
+            this.ids = appended;
+            this.size += added.length;
+        }
+        else {
+            // Merge new ids with the existing ids by skipping removed ids
+            long[] merged = this.allocate(this.buffer, this.size + added.length);
+            int i = 0, j = 0, k = 0;
+            while(i < this.size || j < added.length) {
+                if(i < this.size && this.ids[i] < idRange.start) { i++; continue; }
+                if(j >= added.length || (i < this.size && this.compare(this.ids[i], added[j]) < 0)) {
+                    merged[k++] = this.ids[i++];
+                }
+                else {
+                    merged[k++] = added[j++];
+                }
+            }
+            this.buffer = this.ids; // Reused for the next merge
+            this.ids = merged;
+            this.size = k;
+        }
+        this.indexedEnd = idRange.end;
+    }
+
+    // Position of the first id with the value greater than (upper) or greater than or equal to (lower) the specified value
+    protected int findBound(Object value, boolean upper) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = this.compare(this.ids[mid], value);
+            if (cmp < 0 || (upper && cmp == 0))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // Ids of records with values in [from, to) ordered by their values. Null bound means no bound.
+    public synchronized long[] find(Object from, Object to, Range idRange) {
+        this.update(idRange);
+
+        int start = from == null ? 0 : this.findBound(from, false);
+        int end = to == null ? this.size : this.findBound(to, false);
+
+        long[] result = new long[Math.max(0, end - start)];
+        int count = 0;
+        for(int i = start; i < end; i++) {
+            if(this.ids[i] < idRange.start) continue; // Removed
+            result[count++] = this.ids[i];
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    // Values of the record have been changed
+    public synchronized void afterUpdate(long id) {
+        if(id < this.indexedEnd) {
+            this.valid = false; // Position of the record has to be changed so we rebuild the index
+        }
+    }
+
+    public synchronized void reset() {
+        this.size = 0;
+        this.buffer = null;
+        this.indexedEnd = 0;
+        this.valid = false;
+    }
+
+    public SortedIndex(Column column) {
+        this.column = column;
+    }
+}
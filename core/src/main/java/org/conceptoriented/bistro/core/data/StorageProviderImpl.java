@@ -0,0 +1,60 @@
+package org.conceptoriented.bistro.core.data;
+
+import org.conceptoriented.bistro.core.Column;
+import org.conceptoriented.bistro.core.ColumnData;
+import org.conceptoriented.bistro.core.StorageProvider;
+import org.conceptoriented.bistro.core.Table;
+import org.conceptoriented.bistro.core.TableData;
+
+/**
+ * Default storage which chooses column data depending on the column type.
+ * Primitive numeric types are stored without boxing (and off-heap if requested by the table) and time stamps are delta-encoded.
+ * Dictionary encoding of strings is used only if requested because values are never removed from the dictionary (e.g., for a table or column with few distinct values).
+ */
+public class StorageProviderImpl implements StorageProvider {
+
+    private final boolean dictionary; // Store strings as codes of values in a dictionary
+    public boolean isDictionary() {
+        return this.dictionary;
+    }
+
+    @Override
+    public TableData createTableData(Table table) {
+        return new TableDataImpl(table);
+    }
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        Table output = column.getOutput();
+        String type = (output != null && output.isPrimitive()) ? output.getName() : "Object";
+
+        if(column.getInput().isOffHeap() && ColumnDataOffHeap.getType(type) >= 0) {
+            return new ColumnDataOffHeap(start, end, ColumnDataOffHeap.getType(type));
+        }
+        else if(type.equalsIgnoreCase("Double")) {
+            return new ColumnDataDouble(start, end);
+        }
+        else if(type.equalsIgnoreCase("Long")) {
+            return new ColumnDataLong(start, end);
+        }
+        else if(type.equalsIgnoreCase("Integer")) {
+            return new ColumnDataInteger(start, end);
+        }
+        else if(type.equalsIgnoreCase("String") && this.dictionary) {
+            return new ColumnDataDictionary(start, end);
+        }
+        else if(type.equalsIgnoreCase("Instant")) {
+            return new ColumnDataTimestamp(start, end);
+        }
+        else {
+            return new ColumnDataImpl(start, end);
+        }
+    }
+
+    public StorageProviderImpl() {
+        this(false);
+    }
+    public StorageProviderImpl(boolean dictionary) {
+        this.dictionary = dictionary;
+    }
+}
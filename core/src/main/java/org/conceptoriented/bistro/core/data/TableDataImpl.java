@@ -1,14 +1,20 @@
 package org.conceptoriented.bistro.core.data;
 
+import org.conceptoriented.bistro.core.BistroErrorCode;
+import org.conceptoriented.bistro.core.BistroException;
 import org.conceptoriented.bistro.core.Column;
+import org.conceptoriented.bistro.core.ColumnData;
 import org.conceptoriented.bistro.core.Table;
 import org.conceptoriented.bistro.core.TableData;
 import org.conceptoriented.bistro.core.Range;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class TableDataImpl implements TableData {
 
@@ -35,9 +41,40 @@ public class TableDataImpl implements TableData {
         return new Range(this.addedRange.end - count, this.addedRange.end); // Return ids of added elements
     }
 
+    @Override
+    public Range add(int count, List<Column> columns, List<Object> values) {
+
+        // Check the input before ids are reserved so that no records are added if it is wrong
+        if(columns.size() != values.size()) {
+            throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Wrong values.", "The number of value arrays has to be equal to the number of columns.");
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if(columns.get(i).getInput() != this.table) {
+                throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Wrong column.", "Column " + columns.get(i).getName() + " does not belong to table " + this.table.getName() + ".");
+            }
+            Object array = values.get(i);
+            if(!(array instanceof double[] || array instanceof long[] || array instanceof int[] || array instanceof Object[])) {
+                throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Wrong values.", "Column values have to be passed as an array.");
+            }
+            if(Array.getLength(array) < count) {
+                throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Wrong values.", "Array of values of column " + columns.get(i).getName() + " is shorter than the number of records.");
+            }
+        }
+
+        Range range = this.add(count);
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnData data = columns.get(i).getData();
+            Object array = values.get(i);
+            if(array instanceof double[]) data.setDoubles(range.start, (double[])array, count);
+            else if(array instanceof long[]) data.setLongs(range.start, (long[])array, count);
+            else if(array instanceof int[]) data.setInts(range.start, (int[])array, count);
+            else data.setValues(range.start, (Object[])array, count);
+        }
+        return range;
+    }
+
     @Override
     public long remove() { // Remove oldest elements with smallest ids. The removed id is returned.
-        this.table.getColumns().forEach( x -> x.getData().remove() );
         if(this.getLength() > 0) { this.removedRange.end++; this.changedAt = System.nanoTime(); }
         return this.removedRange.end - 1; // Id of the removed record (this id is not valid anymore)
     }
@@ -56,7 +93,7 @@ public class TableDataImpl implements TableData {
 
     @Override
     public long remove(Column column, Object value) { // Remove old records with smallest values - less than the specified threshold (think of it as date of birth or id or timestamp)
-        long insertId = column.getData().findSortedFromStart(value); // It can be in any range: deleted, existing, added
+        long insertId = column.getData().findSortedLower(value); // It can be in any range: deleted, existing, added
         long toRemove = insertId - this.removedRange.end; // Records which are still not marked as removed
         if(toRemove > 0) {
             toRemove = Math.min(toRemove, this.getLength());
@@ -76,6 +113,24 @@ public class TableDataImpl implements TableData {
         this.removedRange.end = initialId;
         this.removedRange.start = initialId;
 
+        this.table.getColumns().forEach( x -> x.getData().reset(initialId, initialId) );
+        this.indexes.forEach( x -> x.reset() );
+        this.sortedIndexes.forEach( x -> x.reset() );
+
+        this.changedAt = System.nanoTime();
+        this.resetAt = this.changedAt;
+    }
+
+    @Override
+    public void restore(Range addedRange, Range removedRange) {
+        this.addedRange.start = addedRange.start;
+        this.addedRange.end = addedRange.end;
+        this.removedRange.start = removedRange.start;
+        this.removedRange.end = removedRange.end;
+
+        this.indexes.forEach( x -> x.reset() );
+        this.sortedIndexes.forEach( x -> x.reset() );
+
         this.changedAt = System.nanoTime();
     }
 
@@ -98,32 +153,140 @@ public class TableDataImpl implements TableData {
     }
     @Override
     public void setValues(long id, Map<String,Object> record) {
+        this.indexes.forEach( x -> x.beforeUpdate(id) );
         for (Map.Entry<String, Object> field : record.entrySet()) {
             String name = field.getKey();
             Column col = this.table.getColumn(name);
             Object value = field.getValue();
             col.getData().setValue(id, value);
         }
+        this.indexes.forEach( x -> x.afterUpdate(id) );
+        this.sortedIndexes.forEach( x -> { if(record.containsKey(x.getColumn().getName())) x.afterUpdate(id); } );
     }
     @Override
     public void setValues(long id, List<Column> columns, List<Object> values) {
+        this.indexes.forEach( x -> x.beforeUpdate(id) );
         for (int i = 0; i < columns.size(); i++) {
             Column col = columns.get(i);
             Object value = values.get(i);
             col.getData().setValue(id, value);
         }
+        this.indexes.forEach( x -> x.afterUpdate(id) );
+        this.sortedIndexes.forEach( x -> { if(columns.contains(x.getColumn())) x.afterUpdate(id); } );
+    }
+
+    //
+    // Search
+    //
+
+    protected List<HashIndex> indexes = new ArrayList<>();
+
+    protected synchronized HashIndex getIndex(List<Column> columns) {
+        for(HashIndex index : this.indexes) {
+            if(index.getColumns().equals(columns)) return index;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void createIndex(List<Column> columns) {
+        if(columns == null || columns.isEmpty()) return;
+        if(this.getIndex(columns) != null) return; // Already exists
+        this.indexes.add(new HashIndex(columns));
+    }
+
+    @Override
+    public synchronized void dropIndex(List<Column> columns) {
+        HashIndex index = this.getIndex(columns);
+        if(index != null) this.indexes.remove(index);
+    }
+
+    @Override
+    public synchronized List<List<Column>> getIndexes() {
+        return this.indexes.stream().map(x -> x.getColumns()).collect(Collectors.toList());
+    }
+
+    protected List<SortedIndex> sortedIndexes = new ArrayList<>();
+
+    protected synchronized SortedIndex getSortedIndex(Column column) {
+        for(SortedIndex index : this.sortedIndexes) {
+            if(index.getColumn() == column) return index;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void createSortedIndex(Column column) {
+        if(column == null) return;
+        if(this.getSortedIndex(column) != null) return; // Already exists
+        this.sortedIndexes.add(new SortedIndex(column));
+    }
+
+    @Override
+    public synchronized List<Column> getSortedIndexes() {
+        return this.sortedIndexes.stream().map(x -> x.getColumn()).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void dropSortedIndex(Column column) {
+        SortedIndex index = this.getSortedIndex(column);
+        if(index != null) this.sortedIndexes.remove(index);
+    }
+
+    @Override
+    public long[] findRange(Column column, Object from, Object to) {
+
+        SortedIndex sortedIndex = this.getSortedIndex(column);
+        if(sortedIndex != null) {
+            return sortedIndex.find(from, to, this.getIdRange());
+        }
+
+        // Column data can store removed records so we intersect with valid ids
+        Range idRange = this.getIdRange();
+        Range range = column.getData().findSortedRange(from, to);
+        long start = Math.max(range.start, idRange.start);
+        long end = Math.min(range.end, idRange.end);
+
+        long[] result = new long[(int)Math.max(0, end - start)];
+        for(int i = 0; i < result.length; i++) {
+            result[i] = start + i;
+        }
+        return result;
     }
 
     @Override
     public long findValues(List<Object> values, List<Column> columns) {
 
+        HashIndex hashIndex = this.getIndex(columns);
+        if(hashIndex != null) {
+            return hashIndex.find(values, this.getIdRange());
+        }
+
+        // Values of dictionary-encoded columns are compared using their codes
+        ColumnDataDictionary[] dictionaryData = new ColumnDataDictionary[columns.size()];
+        int[] codes = new int[columns.size()];
+        for(int j=0; j<columns.size(); j++) {
+            if(!(columns.get(j).getData() instanceof ColumnDataDictionary)) continue;
+            dictionaryData[j] = (ColumnDataDictionary)columns.get(j).getData();
+            codes[j] = dictionaryData[j].getDictionary().getCode(values.get(j));
+            if(codes[j] == ColumnDataDictionary.NONE) return -1; // No record can have this value
+        }
+
         Range searchRange = this.getIdRange();
         long index = -1;
         for(long i=searchRange.start; i<searchRange.end; i++) { // Scan all records and compare
-            // OPTIMIZATION: We could create or use an index and then binary search
+            // OPTIMIZATION: Create an index on these columns (createIndex) so that it is used instead of scanning
 
             boolean found = true;
             for(int j=0; j<columns.size(); j++) {
+                if(dictionaryData[j] != null) {
+                    if(dictionaryData[j].getCode(i) != codes[j]) {
+                        found = false;
+                        break;
+                    }
+                    continue;
+                }
+
                 Object recordValue = values.get(j);
                 Object columnValue = columns.get(j).getData().getValue(i);
 
@@ -182,12 +345,23 @@ public class TableDataImpl implements TableData {
     // Tracking changes (delta)
     //
 
-    protected long changedAt; // Time of latest change
+    protected volatile long changedAt; // Time of latest change (volatile because elements are evaluated by parallel workers)
     @Override
     public long getChangedAt() {
         return this.changedAt;
     }
 
+    @Override
+    public void setChangedAt(long changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    protected volatile long resetAt; // Time of latest reset
+    @Override
+    public long getResetAt() {
+        return this.resetAt;
+    }
+
     @Override
     public boolean isChanged() { // Changes in a table are made by adding and removing records
         if(this.addedRange.getLength() != 0) return true;
@@ -204,6 +378,14 @@ public class TableDataImpl implements TableData {
     public void resetChanged() { // Forget about the change status/scope/delta without changing the valid data currently in the tables
         this.addedRange.start = this.addedRange.end;
         this.removedRange.start = this.removedRange.end;
+
+        // Removed records are not needed anymore (e.g., by removers of accumulate columns) so their data can be physically deleted
+        for(Column col : this.table.getColumns()) {
+            long toRemove = this.removedRange.end - col.getData().getIdRange().start;
+            if(toRemove > 0) {
+                col.getData().remove(toRemove);
+            }
+        }
     }
 
     //
@@ -215,7 +397,7 @@ public class TableDataImpl implements TableData {
 
         this.table = table;
 
-        this.reset();
+        // Empty (data of existing columns is not reset)
         this.changedAt = 0; // Very old - need to be evaluated
     }
 }
@@ -0,0 +1,84 @@
+package org.conceptoriented.bistro.core.data;
+
+/**
+ * Bitmap with one bit for each cell of an array which is set if the cell stores a valid (non-null) value.
+ * Bulk operations process 64 cells at once so that blocks of nulls can be set, counted and skipped without checking individual cells.
+ */
+public class ValidityBitmap {
+
+    private long[] words;
+
+    public boolean get(int i) {
+        return (this.words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void set(int i, boolean valid) {
+        if(valid) this.words[i >>> 6] |= (1L << i);
+        else this.words[i >>> 6] &= ~(1L << i);
+    }
+
+    // Set or clear all bits in the interval [from, to)
+    public void set(int from, int to, boolean valid) {
+        if(from >= to) return;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        for(int w = first; w <= last; w++) {
+            long mask = -1L;
+            if(w == first) mask &= firstMask;
+            if(w == last) mask &= lastMask;
+            if(valid) this.words[w] |= mask;
+            else this.words[w] &= ~mask;
+        }
+    }
+
+    // Number of set bits in the interval [from, to)
+    public int count(int from, int to) {
+        if(from >= to) return 0;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        int count = 0;
+        for(int w = first; w <= last; w++) {
+            long mask = -1L;
+            if(w == first) mask &= firstMask;
+            if(w == last) mask &= lastMask;
+            count += Long.bitCount(this.words[w] & mask);
+        }
+        return count;
+    }
+
+    // Position of the first set (valid) or cleared (null) bit in the interval [from, to) or 'to' if there is no such bit
+    public int next(int from, int to, boolean valid) {
+        if(from >= to) return to;
+        int w = from >>> 6;
+        long word = (valid ? this.words[w] : ~this.words[w]) & (-1L << from);
+        while(word == 0) {
+            w++;
+            if((w << 6) >= to) return to;
+            word = valid ? this.words[w] : ~this.words[w];
+        }
+        return Math.min((w << 6) + Long.numberOfTrailingZeros(word), to);
+    }
+
+    // Allocate a new bitmap of the specified size and copy the specified interval of the old bitmap to its beginning
+    public void resize(int from, int length, int newCapacity) {
+        long[] newWords = new long[(newCapacity + 63) >>> 6];
+        int shift = from & 63;
+        int src = from >>> 6;
+        for(int w = 0; w < (length + 63) >>> 6; w++) {
+            long word = this.words[src + w] >>> shift;
+            if(shift != 0 && src + w + 1 < this.words.length) {
+                word |= this.words[src + w + 1] << (64 - shift);
+            }
+            newWords[w] = word;
+        }
+        this.words = newWords;
+    }
+
+    public ValidityBitmap(int capacity) {
+        this.words = new long[(capacity + 63) >>> 6];
+    }
+}
@@ -1,7 +1,12 @@
 package org.conceptoriented.bistro.core.operations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.conceptoriented.bistro.core.*;
 
@@ -16,6 +21,9 @@ public class OpAccumulate implements Operation {
 
     EvalAccumulate adder;
     EvalAccumulate remover;
+    EvalMerge merger; // Optional. If the adder is thread-safe then facts are accumulated in parallel and partial aggregates are merged
+
+    Aggregate aggregate; // Alternatively, a built-in aggregate of the values of the (single) path is maintained for each group
 
     ColumnPath[] paths;
 
@@ -37,7 +45,7 @@ public class OpAccumulate implements Operation {
         }
 
         // Updater dependencies
-        if(this.paths != null && (this.adder != null || this.remover != null)) {
+        if(this.paths != null && (this.adder != null || this.remover != null || this.aggregate != null)) {
             for(ColumnPath path : this.paths) {
                 for(Column col : path.columns) {
                     if(!deps.contains(col)) deps.add(col);
@@ -48,9 +56,43 @@ public class OpAccumulate implements Operation {
         return deps;
     }
 
+    long evaluatedAt = 0; // Time of the last evaluation
+
     @Override
     public void evaluate() {
 
+        boolean fullScope = this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt(); // Definition has changed
+
+        if(this.column.getInput().getData().getResetAt() > this.evaluatedAt) { // Group table has been reset (e.g., re-populated by projection)
+            fullScope = true;
+        }
+        this.evaluatedAt = System.nanoTime();
+
+        if(!fullScope) { // Changes of groups or values of existing facts can influence any group
+            List<ColumnPath> paths = new ArrayList<>();
+            paths.add(this.groupPath);
+            if(this.paths != null) paths.addAll(Arrays.asList(this.paths));
+            List<Range> changedRanges = ColumnPath.getChangedRanges(paths);
+            if(changedRanges == null || !changedRanges.isEmpty()) {
+                fullScope = true;
+            }
+        }
+
+        if(this.aggregate != null) {
+            this.evalAggregate(fullScope);
+            return;
+        }
+
+        Table mainTable = this.groupPath.getInput(); // Loop/scan table - fact table (not the table product this column is defined)
+
+        if(fullScope) { // Accumulate all facts from scratch
+            this.column.getData().setValue(this.column.getInput().getData().getIdRange()); // Initialize all groups
+            if(this.adder != null) {
+                this.evalUpdater(mainTable.getData().getIdRange(), this.adder); // Accumulate all facts
+            }
+            return;
+        }
+
         //
         // Initialize new elements
         //
@@ -59,7 +101,6 @@ public class OpAccumulate implements Operation {
         //
         // Update group elements by data from added/removed facts
         //
-        Table mainTable = this.groupPath.getInput(); // Loop/scan table - fact table (not the table product this column is defined)
 
         if(this.remover != null) {
             Range removedRange = mainTable.getData().getRemovedRange();
@@ -85,30 +126,113 @@ public class OpAccumulate implements Operation {
 
     protected void evalUpdater(Range mainRange, EvalAccumulate lambda) {
 
+        ForkJoinPool executor = this.column.getSchema().getExecutor();
+        if(executor != null && this.merger != null && lambda == this.adder && lambda instanceof ThreadSafe && mainRange.getLength() >= 2 * PARALLEL_CHUNK_SIZE) {
+            this.evalParallel(mainRange, lambda, executor);
+            return;
+        }
+
+        this.evalUpdater(mainRange.start, mainRange.end, lambda, null);
+    }
+
+    // Minimum number of facts processed by one task in parallel mode
+    private static final int PARALLEL_CHUNK_SIZE = 16384;
+
+    // Number of consecutive facts whose groups and parameters are gathered at once
+    private static final int BLOCK_SIZE = 1024;
+
+    // Thread-safe adders with a merger are evaluated for partitions of the fact range by the executor of the schema.
+    // Each task accumulates facts of its partition into its own partial aggregates (starting from the default value) which are then merged into the column by this thread.
+    protected void evalParallel(Range range, EvalAccumulate lambda, ForkJoinPool executor) {
+        long partitions = Math.min(executor.getParallelism(), range.getLength() / PARALLEL_CHUNK_SIZE);
+        long partitionSize = (range.getLength() + partitions - 1) / partitions;
+
+        List<ForkJoinTask<Map<Long, Object>>> tasks = new ArrayList<>();
+        for(long start = range.start; start < range.end; start += partitionSize) {
+            final long from = start;
+            final long to = Math.min(range.end, start + partitionSize);
+            tasks.add(executor.submit(() -> this.evalUpdater(from, to, lambda, new HashMap<>())));
+        }
+
+        // Merge partial aggregates in the order of partitions
+        for(ForkJoinTask<Map<Long, Object>> task : tasks) {
+            Map<Long, Object> partial = task.join(); // Exceptions of the function are re-thrown
+            for(Map.Entry<Long, Object> entry : partial.entrySet()) {
+                long g = entry.getKey();
+                Object result;
+                try {
+                    result = this.merger.merge(this.column.getData().getValue(g), entry.getValue());
+                }
+                catch(BistroException e) {
+                    throw(e);
+                }
+                catch(Exception e) {
+                    throw(new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function."));
+                }
+                this.column.getData().setValue(g, result);
+            }
+        }
+    }
+
+    // Update aggregates of groups by facts in [start, end). Aggregates are stored in the column or in the partial aggregates (if specified)
+    protected Map<Long, Object> evalUpdater(long start, long end, EvalAccumulate lambda, Map<Long, Object> partial) {
+
+        if(partial == null && lambda instanceof EvalAccumulateDouble) {
+            this.evalUpdaterDouble(start, end, (EvalAccumulateDouble)lambda);
+            return null;
+        }
+
         // Get all necessary parameters and prepare (resolve) the corresponding data (function) objects for reading valuePaths
         Object[] paramValues = new Object[this.paths.length]; // Will store valuePaths for all params
         Object result; // Will be written to output for each input
         Object aggregate;
 
-        for(long i=mainRange.start; i<mainRange.end; i++) {
+        // Blocks of facts without group are skipped at once
+        ColumnData groupData = this.groupPath.size() == 1 ? this.groupPath.columns.get(0).getData() : null;
 
-            // Find group, that is, projection of the current fact to the group table
-            Object g_out = this.groupPath.getValue(i);
-            if(g_out == null) {
+        // Groups and parameters are gathered for blocks of facts
+        int blockSize = (int)Math.min(BLOCK_SIZE, end - start);
+        long[] groups = new long[blockSize];
+        Object[][] paramBlocks = new Object[this.paths.length][blockSize];
+        long[] ids = new long[blockSize]; // Intermediate ids of the paths reused for all blocks
+        long blockStart = start;
+        long blockEnd = start;
+
+        for(long i=start; i<end; i++) {
+
+            if(groupData != null && groupData.isNull(i)) {
+                i = groupData.nextValid(i, end) - 1;
                 continue; // Do not accumulate facts without group
             }
-            Long g = (Long)g_out;
-            if(g == -1) {
+
+            if(i >= blockEnd) {
+                blockStart = i;
+                blockEnd = Math.min(end, blockStart + blockSize);
+                this.groupPath.getLongs(blockStart, groups, (int)(blockEnd - blockStart));
+                for(int p=0; p<this.paths.length; p++) {
+                    this.paths[p].getValues(blockStart, paramBlocks[p], (int)(blockEnd - blockStart), ids);
+                }
+            }
+            int k = (int)(i - blockStart);
+
+            // Find group, that is, projection of the current fact to the group table
+            long g = groups[k];
+            if(g < 0) {
                 continue; // Do not accumulate facts without group
             }
 
             // Read all parameter valuePaths
             for(int p=0; p<this.paths.length; p++) {
-                paramValues[p] = this.paths[p].getValue(i);
+                paramValues[p] = paramBlocks[p][k];
             }
 
             // Read current out value
-            aggregate = this.column.getData().getValue(g);
+            if(partial == null) {
+                aggregate = this.column.getData().getValue(g);
+            }
+            else {
+                aggregate = partial.containsKey(g) ? partial.get(g) : this.column.getData().getDefaultValue();
+            }
 
             //
             // Call user-defined function
@@ -124,8 +248,253 @@ public class OpAccumulate implements Operation {
             }
 
             // Update output
-            this.column.getData().setValue(g, result);
+            if(partial == null) {
+                this.column.getData().setValue(g, result);
+            }
+            else {
+                partial.put(g, result);
+            }
         }
+
+        return partial;
+    }
+
+    // Primitive functions read parameters and update aggregates in the column without boxing (if the column data stores primitive values)
+    protected void evalUpdaterDouble(long start, long end, EvalAccumulateDouble lambda) {
+
+        double[] paramValues = new double[this.paths.length];
+        double result;
+
+        ColumnData data = this.column.getData();
+        ColumnData groupData = this.groupPath.size() == 1 ? this.groupPath.columns.get(0).getData() : null;
+
+        int blockSize = (int)Math.min(BLOCK_SIZE, end - start);
+        long[] groups = new long[blockSize];
+        double[][] paramBlocks = new double[this.paths.length][blockSize];
+        long[] ids = new long[blockSize]; // Intermediate ids of the paths reused for all blocks
+        long blockStart = start;
+        long blockEnd = start;
+
+        for(long i=start; i<end; i++) {
+
+            if(groupData != null && groupData.isNull(i)) {
+                i = groupData.nextValid(i, end) - 1;
+                continue; // Do not accumulate facts without group
+            }
+
+            if(i >= blockEnd) {
+                blockStart = i;
+                blockEnd = Math.min(end, blockStart + blockSize);
+                this.groupPath.getLongs(blockStart, groups, (int)(blockEnd - blockStart));
+                for(int p=0; p<this.paths.length; p++) {
+                    this.paths[p].getDoubles(blockStart, paramBlocks[p], (int)(blockEnd - blockStart), ids);
+                }
+            }
+            int k = (int)(i - blockStart);
+
+            // Find group
+            long g = groups[k];
+            if(g < 0) {
+                continue; // Do not accumulate facts without group
+            }
+
+            // Read all parameter values
+            for(int p=0; p<this.paths.length; p++) {
+                paramValues[p] = paramBlocks[p][k];
+            }
+
+            //
+            // Call user-defined function
+            //
+            try {
+                result = lambda.evaluate(data.getDouble(g), paramValues);
+            }
+            catch(BistroException e) {
+                throw(e);
+            }
+            catch(Exception e) {
+                throw(new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function."));
+            }
+
+            // Update output
+            if(Double.isNaN(result)) data.setNull(g);
+            else data.setDouble(g, result);
+        }
+    }
+
+    //
+    // Built-in aggregates
+    //
+
+    // States of the aggregate for group ids starting from statesStart (consecutive cells for each group)
+    double[] states = new double[0];
+    long statesStart = 0;
+    ColumnData statesData; // Column data the states have been last written to. Otherwise (e.g., the data has been restored or replaced), the states are unknown
+
+    protected void evalAggregate(boolean fullScope) {
+        Table groupTable = this.column.getInput();
+        Table mainTable = this.groupPath.getInput(); // Fact table
+
+        Range groupRange = groupTable.getData().getIdRange();
+        this.allocateStates(groupRange);
+
+        ColumnData data = this.column.getData();
+
+        Range removedRange = mainTable.getData().getRemovedRange();
+        Range addedRange = mainTable.getData().getAddedRange();
+
+        if(data != this.statesData) { // States do not correspond to the data
+            fullScope = true;
+        }
+        this.statesData = null; // Until the states are updated
+
+        if(fullScope || (removedRange.getLength() > 0 && !this.aggregate.isInvertible())) { // Recompute all groups from the remaining facts
+            Arrays.fill(this.states, 0.0);
+            this.evalAggregate(mainTable.getData().getIdRange(), false, groupRange);
+            this.writeResults(groupRange);
+        }
+        else {
+            // New groups get the aggregate of the empty set
+            this.writeResults(groupTable.getData().getAddedRange());
+
+            this.evalAggregate(removedRange, true, groupRange);
+            this.evalAggregate(addedRange, false, groupRange);
+        }
+
+        this.statesData = data;
+    }
+
+    // Update states of the groups of the facts in the range and write their results to the column
+    protected void evalAggregate(Range range, boolean remove, Range groupRange) {
+        if(range.getLength() <= 0) return;
+
+        ForkJoinPool executor = this.column.getSchema().getExecutor();
+        if(executor != null && !remove && range.getLength() >= 2 * PARALLEL_CHUNK_SIZE) {
+            long partitions = Math.min(executor.getParallelism(), range.getLength() / PARALLEL_CHUNK_SIZE);
+            long partitionSize = (range.getLength() + partitions - 1) / partitions;
+
+            List<ForkJoinTask<double[]>> tasks = new ArrayList<>();
+            for(long start = range.start; start < range.end; start += partitionSize) {
+                final long from = start;
+                final long to = Math.min(range.end, start + partitionSize);
+                tasks.add(executor.submit(() -> {
+                    double[] partial = new double[(int)groupRange.getLength() * this.aggregate.getStateSize()];
+                    this.evalAggregate(from, to, false, partial, groupRange.start, groupRange, null);
+                    return partial;
+                }));
+            }
+
+            // Merge partial states in the order of partitions
+            int size = this.aggregate.getStateSize();
+            int offset = (int)(groupRange.start - this.statesStart) * size;
+            for(ForkJoinTask<double[]> task : tasks) {
+                double[] partial = task.join();
+                for(int k = 0; k < partial.length; k += size) {
+                    this.aggregate.merge(this.states, offset + k, partial, k);
+                }
+            }
+            this.writeResults(groupRange);
+            return;
+        }
+
+        this.evalAggregate(range.start, range.end, remove, this.states, this.statesStart, groupRange, this.column.getData());
+    }
+
+    // Update states (stored for group ids starting from statesStart) by the facts in [start, end) and write results of the updated groups (if the data is specified)
+    protected void evalAggregate(long start, long end, boolean remove, double[] states, long statesStart, Range groupRange, ColumnData data) {
+
+        int size = this.aggregate.getStateSize();
+        ColumnPath path = this.paths[0];
+
+        ColumnData groupData = this.groupPath.size() == 1 ? this.groupPath.columns.get(0).getData() : null;
+
+        int blockSize = (int)Math.min(BLOCK_SIZE, end - start);
+        long[] groups = new long[blockSize];
+        double[] values = new double[blockSize];
+        long[] ids = new long[blockSize]; // Intermediate ids of the path reused for all blocks
+        long blockStart = start;
+        long blockEnd = start;
+
+        for(long i=start; i<end; i++) {
+
+            if(groupData != null && groupData.isNull(i)) {
+                i = groupData.nextValid(i, end) - 1;
+                continue; // Do not accumulate facts without group
+            }
+
+            if(i >= blockEnd) {
+                blockStart = i;
+                blockEnd = Math.min(end, blockStart + blockSize);
+                this.groupPath.getLongs(blockStart, groups, (int)(blockEnd - blockStart));
+                path.getDoubles(blockStart, values, (int)(blockEnd - blockStart), ids);
+            }
+            int k = (int)(i - blockStart);
+
+            long g = groups[k];
+            if(g < groupRange.start || g >= groupRange.end) {
+                continue; // Do not accumulate facts without (valid) group
+            }
+
+            int offset = (int)(g - statesStart) * size;
+            if(remove) this.aggregate.remove(states, offset, values[k]);
+            else this.aggregate.add(states, offset, values[k]);
+
+            if(data != null) this.writeResult(data, g);
+        }
+    }
+
+    private void writeResult(ColumnData data, long g) {
+        double result = this.aggregate.getResult(this.states, (int)(g - this.statesStart) * this.aggregate.getStateSize());
+        if(Double.isNaN(result)) data.setNull(g);
+        else data.setDouble(g, result);
+    }
+
+    private void writeResults(Range range) {
+        ColumnData data = this.column.getData();
+        for(long g = range.start; g < range.end; g++) {
+            this.writeResult(data, g);
+        }
+    }
+
+    // Make states of all groups available. States of deleted groups are dropped when the array is reallocated
+    private void allocateStates(Range groupRange) {
+        int size = this.aggregate.getStateSize();
+        long capacity = this.states.length / size;
+        if(groupRange.start >= this.statesStart && groupRange.end <= this.statesStart + capacity) return;
+
+        long newCapacity = Math.max(16, 2 * groupRange.getLength());
+        double[] newStates = new double[(int)(newCapacity * size)];
+        long from = Math.max(this.statesStart, groupRange.start);
+        long to = Math.min(this.statesStart + capacity, groupRange.end);
+        if(to > from) {
+            System.arraycopy(this.states, (int)(from - this.statesStart) * size, newStates, (int)(from - groupRange.start) * size, (int)(to - from) * size);
+        }
+        this.states = newStates;
+        this.statesStart = groupRange.start;
+    }
+
+    public OpAccumulate(Column column, ColumnPath groupPath, Aggregate aggregate, ColumnPath path) {
+        this.column = column;
+
+        this.groupPath = groupPath;
+
+        this.aggregate = aggregate;
+
+        this.paths = new ColumnPath[] { path };
+    }
+
+    public OpAccumulate(Column column, Column groupColumn, Aggregate aggregate, Column valueColumn) {
+        this(column, new ColumnPath(groupColumn), aggregate, new ColumnPath(valueColumn));
+    }
+
+    public OpAccumulate(Column column, ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, EvalMerge merger, ColumnPath[] paths) {
+        this(column, groupPath, adder, remover, paths);
+        this.merger = merger;
+    }
+
+    public OpAccumulate(Column column, Column groupColumn, EvalAccumulate adder, EvalAccumulate remover, EvalMerge merger, Column[] columns) {
+        this(column, groupColumn, adder, remover, columns);
+        this.merger = merger;
     }
 
     public OpAccumulate(Column column, ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, ColumnPath[] paths) {
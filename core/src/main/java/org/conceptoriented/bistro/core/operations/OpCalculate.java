@@ -3,6 +3,8 @@ package org.conceptoriented.bistro.core.operations;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.conceptoriented.bistro.core.*;
 
@@ -14,6 +16,7 @@ public class OpCalculate implements Operation {
     Column column;
 
     EvalCalculate lambda;
+    EvalCalculateBlock blockLambda; // Alternatively, outputs are computed for blocks of inputs
     List<ColumnPath> parameterPaths = new ArrayList<>();
 
     @Override
@@ -34,7 +37,7 @@ public class OpCalculate implements Operation {
 
     @Override
     public void evaluate() {
-        if(this.lambda == null) { // Default
+        if(this.lambda == null && this.blockLambda == null) { // Default
             this.column.getData().setValue(); // Reset
             return;
         }
@@ -55,14 +58,11 @@ public class OpCalculate implements Operation {
             }
         }
 
+        List<Range> changedRanges = null; // Existing records with changed parameters
         if(!fullScope) { // Some column dependency has changes
-            List<Element> deps = this.getDependencies();
-            for(Element e : deps) {
-                if(!(e instanceof Column)) continue;
-                if(((Column)e).getData().isChanged()) { // There is a column with some changes
-                    fullScope = true;
-                    break;
-                }
+            changedRanges = ColumnPath.getChangedRanges(this.parameterPaths);
+            if(changedRanges == null) { // Changes cannot be restricted to some records
+                fullScope = true;
             }
         }
 
@@ -74,23 +74,68 @@ public class OpCalculate implements Operation {
         // Update dirty elements
         //
 
+        this.evaluate(mainRange);
+
+        if(fullScope) return;
+
+        // Changed existing records are re-evaluated and registered as changed for the dependents of this column
+        Range validRange = mainTable.getData().getIdRange();
+        for(Range changed : changedRanges) {
+            Range range = new Range(Math.max(changed.start, validRange.start), Math.min(changed.end, mainRange.start)); // Added records have been already evaluated
+            if(range.getLength() <= 0) continue;
+            this.evaluate(range);
+            this.column.getData().setChanged(range);
+        }
+    }
+
+    protected void evaluate(Range mainRange) {
+
+        if(this.blockLambda != null) {
+            this.evaluateBlocks(mainRange);
+            return;
+        }
+
+        ForkJoinPool executor = this.column.getSchema().getExecutor();
+        if(executor != null && this.lambda instanceof ThreadSafe && mainRange.getLength() >= 2 * PARALLEL_CHUNK_SIZE) {
+            this.evaluateParallel(mainRange, executor); // Also primitive functions are evaluated without boxing
+            return;
+        }
+
+        if(this.lambda instanceof EvalCalculateDouble) { // Primitive functions get exactly one value per parameter
+            this.evaluateDouble(mainRange, (EvalCalculateDouble)this.lambda);
+            return;
+        }
+
         // Get all necessary parameters and prepare (resolve) the corresponding data (function) objects for reading valuePaths
-        List<ColumnPath> paramPaths = this.parameterPaths;
-        Object[] paramValues = new Object[paramPaths.size() + 1]; // Will store valuePaths for all params and current output at the end
-        Object result; // Will be written to output for each input
+        Object[] paramValues = new Object[this.parameterPaths.size() + 1]; // Will store valuePaths for all params and current output at the end
 
         for(long i=mainRange.start; i<mainRange.end; i++) {
+            Object result = this.evaluate(i, paramValues);
+
+            // Update output
+            this.column.getData().setValue(i, result);
+        }
+    }
+
+    // Primitive functions read parameters and write outputs without boxing (if the column data stores primitive values)
+    protected void evaluateDouble(Range range, EvalCalculateDouble lambda) {
+        List<ColumnPath> paramPaths = this.parameterPaths;
+        double[] paramValues = new double[paramPaths.size()];
 
-            // Read all parameter valuePaths
-            for(int p=0; p<paramPaths.size(); p++) {
-                paramValues[p] = paramPaths.get(p).getValue(i);
+        ColumnData data = this.column.getData();
+        for(long i=range.start; i<range.end; i++) {
+
+            // Read all parameter values
+            for(int p=0; p<paramValues.length; p++) {
+                paramValues[p] = paramPaths.get(p).getDouble(i);
             }
 
             //
             // Call user-defined function
             //
+            double result;
             try {
-                result = this.lambda.evaluate(paramValues);
+                result = lambda.evaluate(paramValues);
             }
             catch(BistroException e) {
                 throw(e);
@@ -100,9 +145,143 @@ public class OpCalculate implements Operation {
             }
 
             // Update output
-            this.column.getData().setValue(i, result);
+            if(Double.isNaN(result)) data.setNull(i);
+            else data.setDouble(i, result);
         }
+    }
 
+    protected double[] evaluateChunkDouble(long start, long end, EvalCalculateDouble lambda) {
+        double[] paramValues = new double[this.parameterPaths.size()]; // Own buffer of this thread (one slot per parameter)
+        double[] results = new double[(int)(end - start)];
+        for(long i=start; i<end; i++) {
+            for(int p=0; p<paramValues.length; p++) {
+                paramValues[p] = this.parameterPaths.get(p).getDouble(i);
+            }
+            try {
+                results[(int)(i - start)] = lambda.evaluate(paramValues);
+            }
+            catch(BistroException e) {
+                throw(e);
+            }
+            catch(Exception e) {
+                throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+            }
+        }
+        return results;
+    }
+
+    // Number of consecutive ids passed to a block function in one call
+    private static final int BLOCK_SIZE = 1024;
+
+    protected void evaluateBlocks(Range range) {
+        int paramCount = this.parameterPaths.size();
+        int blockSize = (int)Math.min(BLOCK_SIZE, range.getLength());
+        double[][] paramValues = new double[paramCount][blockSize];
+        double[] results = new double[blockSize];
+        long[] ids = new long[blockSize]; // Intermediate ids of the paths reused for all blocks
+
+        ColumnData data = this.column.getData();
+        for(long start = range.start; start < range.end; start += blockSize) {
+            int length = (int)Math.min(blockSize, range.end - start);
+
+            // Read parameter values of the whole block
+            for(int p=0; p<paramCount; p++) {
+                this.parameterPaths.get(p).getDoubles(start, paramValues[p], length, ids);
+            }
+
+            //
+            // Call user-defined function
+            //
+            try {
+                this.blockLambda.evaluate(paramValues, results, length);
+            }
+            catch(BistroException e) {
+                throw(e);
+            }
+            catch(Exception e) {
+                throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+            }
+
+            // Update output
+            data.setDoubles(start, results, length);
+        }
+    }
+
+    // Number of consecutive ids evaluated by one task in parallel mode
+    private static final int PARALLEL_CHUNK_SIZE = 16384;
+
+    // Thread-safe functions are evaluated for chunks of the range by the executor of the schema.
+    // Each task has its own parameter buffer and writes its results into its own array.
+    // The results are written to the column data by this thread so that the data need not support concurrent writes.
+    protected void evaluateParallel(Range range, ForkJoinPool executor) {
+        int parallelism = executor.getParallelism();
+
+        long waveStart = range.start;
+        while(waveStart < range.end) {
+
+            // Submit a wave of chunks (one per worker thread) so that only a limited number of results is buffered
+            List<ForkJoinTask<Object>> tasks = new ArrayList<>();
+            long chunkStart = waveStart;
+            for(int t = 0; t < parallelism && chunkStart < range.end; t++) {
+                final long start = chunkStart;
+                final long end = Math.min(range.end, start + PARALLEL_CHUNK_SIZE);
+                if(this.lambda instanceof EvalCalculateDouble) {
+                    tasks.add(executor.submit(() -> (Object)this.evaluateChunkDouble(start, end, (EvalCalculateDouble)this.lambda)));
+                }
+                else {
+                    tasks.add(executor.submit(() -> (Object)this.evaluateChunk(start, end)));
+                }
+                chunkStart = end;
+            }
+
+            // Wait for the results and write them in the order of ids
+            long id = waveStart;
+            for(ForkJoinTask<Object> task : tasks) {
+                Object results = task.join(); // Exceptions of the function are re-thrown
+                if(results instanceof double[]) {
+                    double[] doubles = (double[])results;
+                    this.column.getData().setDoubles(id, doubles, doubles.length); // NaN is null
+                    id += doubles.length;
+                    continue;
+                }
+                for(Object result : (Object[])results) {
+                    this.column.getData().setValue(id++, result);
+                }
+            }
+
+            waveStart = chunkStart;
+        }
+    }
+
+    protected Object[] evaluateChunk(long start, long end) {
+        Object[] paramValues = new Object[this.parameterPaths.size() + 1]; // Own buffer of this thread
+        Object[] results = new Object[(int)(end - start)];
+        for(long i=start; i<end; i++) {
+            results[(int)(i - start)] = this.evaluate(i, paramValues);
+        }
+        return results;
+    }
+
+    protected Object evaluate(long id, Object[] paramValues) {
+
+        // Read all parameter valuePaths
+        List<ColumnPath> paramPaths = this.parameterPaths;
+        for(int p=0; p<paramPaths.size(); p++) {
+            paramValues[p] = paramPaths.get(p).getValue(id);
+        }
+
+        //
+        // Call user-defined function
+        //
+        try {
+            return this.lambda.evaluate(paramValues);
+        }
+        catch(BistroException e) {
+            throw(e);
+        }
+        catch(Exception e) {
+            throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+        }
     }
 
     public OpCalculate(Column column, EvalCalculate lambda, ColumnPath[] paths) {
@@ -111,6 +290,20 @@ public class OpCalculate implements Operation {
         this.parameterPaths = Arrays.asList(paths);
     }
 
+    public OpCalculate(Column column, EvalCalculateBlock lambda, ColumnPath[] paths) {
+        this.column = column;
+        this.blockLambda = lambda;
+        this.parameterPaths = Arrays.asList(paths);
+    }
+
+    public OpCalculate(Column column, EvalCalculateBlock lambda, Column[] columns) {
+        this.column = column;
+        this.blockLambda = lambda;
+        for (int i = 0; i < columns.length; i++) {
+            this.parameterPaths.add(new ColumnPath(columns[i]));
+        }
+    }
+
     public OpCalculate(Column column, EvalCalculate lambda, Column[] columns) {
         this.column = column;
         this.lambda = lambda;
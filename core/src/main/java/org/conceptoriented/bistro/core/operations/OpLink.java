@@ -108,9 +108,8 @@ public class OpLink implements Operation {
 
         boolean fullScope = false;
 
-        if(isProj) { // Currently project columns require full re-evaluation (because they actually popoulate a table)
-            fullScope = true;
-        }
+        // Project columns append only missing records to the output table so existing records and their ids are retained
+        // If the output table has been reset then the changed time of this column is also reset and all facts are projected again
 
         if(!fullScope) {
             if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Definition has changes
@@ -118,14 +117,11 @@ public class OpLink implements Operation {
             }
         }
 
+        List<Range> changedRanges = null; // Existing records with changed values of the paths
         if(!fullScope) { // Some column dependency has changes
-            List<Element> deps = this.getDependencies();
-            for(Element e : deps) {
-                if(!(e instanceof Column)) continue;
-                if(((Column)e).getData().isChanged()) { // There is a column with some changes
-                    fullScope = true;
-                    break;
-                }
+            changedRanges = ColumnPath.getChangedRanges(this.valuePaths);
+            if(changedRanges == null) { // Changes cannot be restricted to some records
+                fullScope = true;
             }
         }
 
@@ -135,6 +131,24 @@ public class OpLink implements Operation {
             }
         }
 
+        // Existing facts can get other links if the type table has changed (project columns change it themselves)
+        boolean unresolvedScope = false; // Only existing facts without a match have to be resolved again
+        if(!fullScope && !this.isProj) {
+            for(Column col : this.keyColumns) {
+                ColumnData data = col.getData();
+                if(data.isChanged() || !data.getChangedRanges().isEmpty()) { // Key values of existing records have changed
+                    fullScope = true;
+                    break;
+                }
+            }
+            if(typeTable.getData().getRemovedRange().getLength() > 0) { // Existing links can become invalid
+                fullScope = true;
+            }
+            else if(typeTable.getData().getAddedRange().getLength() > 0) { // New records can match facts which have no match
+                unresolvedScope = true;
+            }
+        }
+
         if(!fullScope) {
             mainRange = mainTable.getData().getAddedRange();
         }
@@ -157,13 +171,64 @@ public class OpLink implements Operation {
             rhsResults.add(null);
         }
 
+        // Search in the type table will use hash index on the key columns (changes of keys of existing records are indexed if they are registered)
+        typeTable.getData().createIndex(this.keyColumns);
+
+        this.evalPaths(mainRange, rhsResults);
+
+        if(fullScope) return;
+
+        if(unresolvedScope) {
+            Range validRange = mainTable.getData().getIdRange();
+            ColumnData data = this.column.getData();
+            for(long i = validRange.start; i < mainRange.start; i++) { // Added records have been already evaluated
+                Object out = data.getValue(i);
+                if(out != null && (long)out >= 0) continue;
+                this.evalPaths(new Range(i, i + 1), rhsResults);
+                out = data.getValue(i);
+                if(out != null && (long)out >= 0) data.setChanged(i); // Only resolved facts are changed for the dependents
+            }
+        }
+
+        // Changed existing records are re-evaluated and registered as changed for the dependents of this column
+        Range validRange = mainTable.getData().getIdRange();
+        for(Range changed : changedRanges) {
+            Range range = new Range(Math.max(changed.start, validRange.start), Math.min(changed.end, mainRange.start)); // Added records have been already evaluated
+            if(range.getLength() <= 0) continue;
+            this.evalPaths(range, rhsResults);
+            this.column.getData().setChanged(range);
+        }
+    }
+
+    // Number of consecutive facts whose key paths are gathered at once
+    private static final int BLOCK_SIZE = 1024;
+
+    protected void evalPaths(Range mainRange, List<Object> rhsResults) {
+
+        Table typeTable = this.column.getOutput();
+
+        // Values of the paths are gathered for blocks of facts
+        int blockSize = (int)Math.min(BLOCK_SIZE, mainRange.getLength());
+        Object[][] pathValues = new Object[this.keyColumns.size()][blockSize];
+        long[] ids = new long[blockSize]; // Intermediate ids of the paths reused for all blocks
+        long blockStart = mainRange.start;
+        long blockEnd = mainRange.start;
+
         for(long i=mainRange.start; i < mainRange.end; i++) {
 
+            if(i >= blockEnd) {
+                blockStart = i;
+                blockEnd = Math.min(mainRange.end, blockStart + blockSize);
+                for(int keyNo = 0; keyNo < this.keyColumns.size(); keyNo++) {
+                    this.valuePaths.get(keyNo).getValues(blockStart, pathValues[keyNo], (int)(blockEnd - blockStart), ids);
+                }
+            }
+
             // Evaluate ALL child rhs expressions by producing an array/record of their results
             for(int keyNo = 0; keyNo < this.keyColumns.size(); keyNo++) {
 
                 // Read a value from the column path
-                Object result = this.valuePaths.get(keyNo).getValue(i);
+                Object result = pathValues[keyNo][(int)(i - blockStart)];
 
                 rhsResults.set(keyNo, result);
             }
@@ -1,12 +1,15 @@
 package org.conceptoriented.bistro.core.operations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.conceptoriented.bistro.core.*;
 
 /**
  * The logic of evaluation of rolling columns.
+ * Only rows with new elements in their windows are evaluated if the definition and the parameters of existing rows have not changed.
+ * If a remover (inverse of the adder) is provided then the window is moved by removing old and adding new elements instead of aggregating the whole window for each row.
  */
 public class OpRoll implements Operation {
 
@@ -25,16 +28,31 @@ public class OpRoll implements Operation {
         if(distancePath == null) {
             return (double)(futureId - pastId);
         }
+        else if(this.integralDistance) { // Difference is computed exactly (e.g., nanoseconds of time stamps which would lose precision as doubles)
+            long past = this.distancePath.getLong(pastId);
+            long future = this.distancePath.getLong(futureId);
+            return past == Long.MIN_VALUE || future == Long.MIN_VALUE ? Double.NaN : (double)(future - past);
+        }
         else {
-            return ((Number)this.distancePath.getValue(futureId)).doubleValue() - ((Number)this.distancePath.getValue(pastId)).doubleValue();
+            return this.distancePath.getDouble(futureId) - this.distancePath.getDouble(pastId);
         }
     }
 
+    // Values of the distance path are integral (long, int or time stamps)
+    boolean integralDistance;
+    private static boolean isIntegral(ColumnPath path) {
+        Table output = path == null ? null : path.getOutput();
+        if(output == null || !output.isPrimitive()) return false;
+        return output.getName().equalsIgnoreCase("Long") || output.getName().equalsIgnoreCase("Integer") || output.getName().equalsIgnoreCase("Instant");
+    }
+
     // Constraint: only elements within the specified distance from the central (group) element will be accumulated
     double sizePast; // Window size (past, smaller ids, minimum) - exclusive
     double sizeFuture; // Window size (future, larger ids, maximum) - inclusive
 
-    EvalRoll lambda;
+    EvalRoll lambda; // Adder
+    EvalRoll remover; // Optional inverse of the adder. If specified then the window is moved by adding new and removing old elements.
+    Aggregate aggregate; // Alternatively, a built-in aggregate of the values of the (single) path is maintained while the window is moved
     ColumnPath[] paths;
 
     @Override
@@ -65,19 +83,131 @@ public class OpRoll implements Operation {
         return deps;
     }
 
+    //
+    // State of the window after the last evaluated row (used by the next evaluation if it continues from the next row)
+    //
+    long lastId = -1;
+    long lastMin;
+    long lastMax;
+    Object lastAggregate;
+    long evaluatedAt = 0; // Time of the last evaluation
+
     @Override
     public void evaluate() {
 
-        this.column.getData().setValue(); // Initialize to default value
-
         Table mainTable = this.column.getInput(); // Loop/scan table
 
         Range mainRange = mainTable.getData().getIdRange();
 
-        long min_id = mainRange.start;
-        long max_id = mainRange.start;
+        this.integralDistance = isIntegral(this.distancePath);
+
+        //
+        // Determine the scope of dirtiness
+        //
+
+        boolean fullScope = false;
+
+        if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Definition has changes
+            fullScope = true;
+        }
+
+        if(mainTable.getData().getResetAt() > this.evaluatedAt) { // Ids of the window state are not valid anymore
+            fullScope = true;
+        }
+        this.evaluatedAt = System.nanoTime();
+
+        if(!fullScope) { // Changes in parameters or distances of existing records can influence any window
+            List<ColumnPath> paths = new ArrayList<>(Arrays.asList(this.paths));
+            if(this.distancePath != null) paths.add(this.distancePath);
+            List<Range> changedRanges = ColumnPath.getChangedRanges(paths);
+            if(changedRanges == null || !changedRanges.isEmpty()) {
+                fullScope = true;
+            }
+        }
 
-        for(long i=mainRange.start; i<mainRange.end; i++) {
+        if(fullScope) {
+            this.column.getData().setValue(); // Initialize to default value
+            this.lastId = -1;
+            this.evaluate(mainRange, mainRange);
+            return;
+        }
+
+        //
+        // Update only rows with new elements in their windows
+        //
+
+        Range addedRange = mainTable.getData().getAddedRange();
+        Range removedRange = mainTable.getData().getRemovedRange();
+
+        // Rows added and removed in the same pass are neither evaluated nor used
+        long addedStart = Math.max(addedRange.start, mainRange.start);
+
+        // Rows which had removed elements in their past windows (removed elements are still physically stored)
+        if(removedRange.getLength() > 0) {
+            long end = mainRange.start;
+            for( ; end < addedStart; end++) {
+                if(computeDistance(removedRange.end - 1, end) >= sizePast) break; // The last removed element is outside the window
+            }
+            if(end > mainRange.start) {
+                this.lastId = -1; // Windows have changed
+                this.evaluate(new Range(mainRange.start, end), mainRange);
+            }
+        }
+
+        // Rows which get added elements in their future windows as well as the added rows themselves
+        if(addedRange.end > addedStart) {
+            long start = addedStart;
+            for( ; start > mainRange.start; start--) {
+                if(computeDistance(start - 1, addedStart) > sizeFuture) break; // The first added element is outside the window
+            }
+            this.evaluate(new Range(start, addedRange.end), mainRange);
+        }
+    }
+
+    // Evaluate the specified rows by using elements of the specified (valid) range
+    protected void evaluate(Range range, Range mainRange) {
+
+        if(this.aggregate != null) {
+            this.evaluateAggregate(range, mainRange);
+            return;
+        }
+
+        // Primitive functions update a double aggregate without boxing
+        boolean primitive = this.lambda instanceof EvalRollDouble && (this.remover == null || this.remover instanceof EvalRollDouble);
+
+        Object[] paramValues = new Object[this.paths.length];
+        double[] doubleValues = new double[this.paths.length];
+
+        long min_id;
+        long max_id;
+        Object aggregate = null;
+        double doubleAggregate = Double.NaN;
+        boolean slide = false;
+
+        Object initial = this.column.getData().getDefaultValue(); // Initial aggregate (will be updated)
+        double doubleInitial = initial == null ? Double.NaN : ((Number)initial).doubleValue();
+
+        if(this.remover != null && this.lastId >= 0 && this.lastId == range.start - 1 && this.lastMin >= mainRange.start) {
+            // Continue moving the window of the previous evaluation
+            min_id = this.lastMin;
+            max_id = this.lastMax;
+            aggregate = this.lastAggregate;
+            if(primitive) doubleAggregate = aggregate == null ? Double.NaN : ((Number)aggregate).doubleValue();
+            slide = true;
+        }
+        else {
+            min_id = range.start;
+            max_id = range.start;
+            for( ; min_id > mainRange.start; min_id--) { // Past border of the first row
+                if(computeDistance(min_id - 1, range.start) >= sizePast) break;
+            }
+        }
+
+        ColumnData data = this.column.getData();
+        for(long i=range.start; i<range.end; i++) {
+
+            long old_min = min_id;
+            long old_max = max_id;
 
             //
             // Update window by moving its borders [min,max) forward
@@ -89,6 +219,7 @@ public class OpRoll implements Operation {
             }
 
             // Move max border forward until it does not satisfies distance (and assume exclusive)
+            if(max_id < min_id) max_id = min_id;
             for( ; max_id < mainRange.end; max_id++) {
                 if(computeDistance(i, max_id) > sizeFuture) break; // Outside window
             }
@@ -97,50 +228,217 @@ public class OpRoll implements Operation {
             // For all elements in the window [min, max), prepare (aggregate,distance,params) and call roll adder
             //
 
-            Object aggregate = this.column.getData().getValue(i); // Initial aggregate (will be updated)
-            double distance;
-            Object[] paramValues = new Object[this.paths.length];
+            if(primitive) {
+                if(slide) { // Remove elements which left the window and add elements which entered it
+                    for(long fact_id = old_min; fact_id < Math.min(min_id, old_max); fact_id++) {
+                        doubleAggregate = this.evaluate((EvalRollDouble)this.remover, doubleAggregate, fact_id, i, doubleValues);
+                    }
+                    for(long fact_id = Math.max(old_max, min_id); fact_id < max_id; fact_id++) {
+                        doubleAggregate = this.evaluate((EvalRollDouble)this.lambda, doubleAggregate, fact_id, i, doubleValues);
+                    }
+                }
+                else { // Aggregate all elements of the window
+                    doubleAggregate = doubleInitial;
+                    for(long fact_id = min_id; fact_id < max_id; fact_id++) {
+                        doubleAggregate = this.evaluate((EvalRollDouble)this.lambda, doubleAggregate, fact_id, i, doubleValues);
+                    }
+                    slide = this.remover != null;
+                }
 
-            for(long fact_id = min_id; fact_id < max_id; fact_id++) {
+                // Store final aggregate in the column
+                if(Double.isNaN(doubleAggregate)) data.setNull(i);
+                else data.setDouble(i, doubleAggregate);
+                continue;
+            }
 
-                //
-                // Compute distance
-                //
-                if(fact_id <= i) {
-                    distance = computeDistance(fact_id, i);
+            if(slide) { // Remove elements which left the window and add elements which entered it
+                for(long fact_id = old_min; fact_id < Math.min(min_id, old_max); fact_id++) {
+                    aggregate = this.evaluate(this.remover, aggregate, fact_id, i, paramValues);
                 }
-                else {
-                    distance = computeDistance(i, fact_id);
+                for(long fact_id = Math.max(old_max, min_id); fact_id < max_id; fact_id++) {
+                    aggregate = this.evaluate(this.lambda, aggregate, fact_id, i, paramValues);
                 }
-
-                //
-                // Read parameters
-                //
-                for(int p=0; p<this.paths.length; p++) {
-                    paramValues[p] = this.paths[p].getValue(fact_id);
+            }
+            else { // Aggregate all elements of the window
+                aggregate = initial;
+                for(long fact_id = min_id; fact_id < max_id; fact_id++) {
+                    aggregate = this.evaluate(this.lambda, aggregate, fact_id, i, paramValues);
                 }
+                slide = this.remover != null;
+            }
+
+            data.setValue(i, aggregate); // Store final aggregate in the column
+        }
 
-                //
-                // Evaluate
-                //
-                try {
-                    aggregate = this.lambda.evaluate(aggregate, distance, paramValues);
+        if(range.getLength() > 0) {
+            this.lastId = range.end - 1;
+            this.lastMin = min_id;
+            this.lastMax = max_id;
+            this.lastAggregate = primitive ? (Object)doubleAggregate : aggregate;
+        }
+    }
+
+    protected Object evaluate(EvalRoll lambda, Object aggregate, long fact_id, long i, Object[] paramValues) {
+
+        //
+        // Compute distance
+        //
+        double distance;
+        if(fact_id <= i) {
+            distance = computeDistance(fact_id, i);
+        }
+        else {
+            distance = computeDistance(i, fact_id);
+        }
+
+        //
+        // Read parameters
+        //
+        for(int p=0; p<this.paths.length; p++) {
+            paramValues[p] = this.paths[p].getValue(fact_id);
+        }
+
+        //
+        // Evaluate
+        //
+        try {
+            return lambda.evaluate(aggregate, distance, paramValues);
+        }
+        catch(BistroException e) {
+            throw(e);
+        }
+        catch(Exception e) {
+            throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+        }
+    }
+
+    protected double evaluate(EvalRollDouble lambda, double aggregate, long fact_id, long i, double[] paramValues) {
+
+        double distance;
+        if(fact_id <= i) {
+            distance = computeDistance(fact_id, i);
+        }
+        else {
+            distance = computeDistance(i, fact_id);
+        }
+
+        for(int p=0; p<this.paths.length; p++) {
+            paramValues[p] = this.paths[p].getDouble(fact_id);
+        }
+
+        try {
+            return lambda.evaluate(aggregate, distance, paramValues);
+        }
+        catch(BistroException e) {
+            throw(e);
+        }
+        catch(Exception e) {
+            throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+        }
+    }
+
+    // Built-in aggregates do not depend on the distance and are updated while the window moves forward.
+    // Invertible aggregates remove elements which left the window. Other aggregates (min, max, first, last) keep a queue of the window elements which can still be the result
+    protected void evaluateAggregate(Range range, Range mainRange) {
+
+        ColumnPath path = this.paths[0];
+        ColumnData data = this.column.getData();
+
+        double[] state = new double[this.aggregate.getStateSize()];
+
+        // Queue of elements (ids and values) in [head, tail)
+        long[] queueIds = new long[16];
+        double[] queueValues = new double[16];
+        int head = 0;
+        int tail = 0;
+
+        long min_id = range.start;
+        for( ; min_id > mainRange.start; min_id--) { // Past border of the first row
+            if(computeDistance(min_id - 1, range.start) >= sizePast) break;
+        }
+        long max_id = min_id; // Empty window
+
+        for(long i=range.start; i<range.end; i++) {
+
+            long old_min = min_id;
+            long old_max = max_id;
+
+            // Move window borders [min,max) forward
+            for( ; min_id <= i; min_id++) {
+                if(computeDistance(min_id, i) < sizePast) break; // Inside window
+            }
+            if(max_id < min_id) max_id = min_id;
+            for( ; max_id < mainRange.end; max_id++) {
+                if(computeDistance(i, max_id) > sizeFuture) break; // Outside window
+            }
+
+            double result;
+            if(this.aggregate.isInvertible()) {
+                for(long fact_id = old_min; fact_id < Math.min(min_id, old_max); fact_id++) {
+                    this.aggregate.remove(state, 0, path.getDouble(fact_id));
                 }
-                catch(BistroException e) {
-                    throw(e);
+                for(long fact_id = Math.max(old_max, min_id); fact_id < max_id; fact_id++) {
+                    this.aggregate.add(state, 0, path.getDouble(fact_id));
                 }
-                catch(Exception e) {
-                    throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+                result = this.aggregate.getResult(state, 0);
+            }
+            else {
+                while(head < tail && queueIds[head] < min_id) head++; // Elements which left the window
+
+                for(long fact_id = Math.max(old_max, min_id); fact_id < max_id; fact_id++) {
+                    double value = path.getDouble(fact_id);
+                    if(Double.isNaN(value)) continue;
+
+                    // Elements which cannot be the result anymore
+                    if(this.aggregate == Aggregate.MIN) {
+                        while(head < tail && queueValues[tail - 1] >= value) tail--;
+                    }
+                    else if(this.aggregate == Aggregate.MAX) {
+                        while(head < tail && queueValues[tail - 1] <= value) tail--;
+                    }
+
+                    if(tail == queueIds.length) { // Reclaim free space in the beginning or grow
+                        int length = tail - head;
+                        int capacity = head > queueIds.length / 2 ? queueIds.length : 2 * queueIds.length;
+                        long[] newIds = new long[capacity];
+                        double[] newValues = new double[capacity];
+                        System.arraycopy(queueIds, head, newIds, 0, length);
+                        System.arraycopy(queueValues, head, newValues, 0, length);
+                        queueIds = newIds;
+                        queueValues = newValues;
+                        head = 0;
+                        tail = length;
+                    }
+                    queueIds[tail] = fact_id;
+                    queueValues[tail] = value;
+                    tail++;
                 }
 
+                if(head == tail) result = Double.NaN;
+                else if(this.aggregate == Aggregate.LAST) result = queueValues[tail - 1];
+                else result = queueValues[head]; // First, minimum or maximum
             }
 
-            this.column.getData().setValue(i, aggregate); // Store final aggregate in the column
+            // Store final aggregate in the column
+            if(Double.isNaN(result)) data.setNull(i);
+            else data.setDouble(i, result);
         }
+    }
 
+    public OpRoll(Column column, ColumnPath distancePath, double sizePast, double sizeFuture, Aggregate aggregate, ColumnPath path) {
+        this(column, distancePath, sizePast, sizeFuture, null, null, new ColumnPath[] { path });
+        this.aggregate = aggregate;
+    }
+
+    public OpRoll(Column column, Column distanceColumn, double sizePast, double sizeFuture, Aggregate aggregate, Column valueColumn) {
+        this(column, distanceColumn != null ? new ColumnPath(distanceColumn) : null, sizePast, sizeFuture, aggregate, new ColumnPath(valueColumn));
     }
 
     public OpRoll(Column column, ColumnPath distancePath, double sizePast, double sizeFuture, EvalRoll lambda, ColumnPath[] paths) {
+        this(column, distancePath, sizePast, sizeFuture, lambda, null, paths);
+    }
+
+    public OpRoll(Column column, ColumnPath distancePath, double sizePast, double sizeFuture, EvalRoll adder, EvalRoll remover, ColumnPath[] paths) {
         this.column = column;
 
         this.distancePath = distancePath;
@@ -148,12 +446,17 @@ public class OpRoll implements Operation {
         this.sizePast = sizePast;
         this.sizeFuture = sizeFuture;
 
-        this.lambda = lambda;
+        this.lambda = adder;
+        this.remover = remover;
         this.paths = paths;
     }
 
     public OpRoll(Column column, Column distanceColumn, double sizePast, double sizeFuture, EvalRoll lambda, Column[] columns) {
-        this(column, distanceColumn != null ? new ColumnPath(distanceColumn) : null, sizePast, sizeFuture, lambda, new ColumnPath[] {});
+        this(column, distanceColumn, sizePast, sizeFuture, lambda, null, columns);
+    }
+
+    public OpRoll(Column column, Column distanceColumn, double sizePast, double sizeFuture, EvalRoll adder, EvalRoll remover, Column[] columns) {
+        this(column, distanceColumn != null ? new ColumnPath(distanceColumn) : null, sizePast, sizeFuture, adder, remover, new ColumnPath[] {});
 
         this.paths = new ColumnPath[columns.length];
         for (int i = 0; i < columns.length; i++) {
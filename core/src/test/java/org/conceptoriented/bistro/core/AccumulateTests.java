@@ -140,4 +140,203 @@ public class AccumulateTests {
         assertEquals(0.0, ta.getData().getValue(2));
     }
 
+    @Test
+    public void accuDoubleTest() { // Primitive functions are evaluated without boxing
+        Schema s = this.createSchema();
+        Table t = s.getTable("T");
+        Table t2 = s.getTable("T2");
+
+        Column t2id = t2.getColumn("Id");
+
+        Column ta = t.getColumn("A");
+        ta.getData().setDefaultValue(0.0);
+        ta.accumulate(
+                t2.getColumn("G"),
+                (EvalAccumulateDouble) (a,p) -> a + p[0],
+                (EvalAccumulateDouble) (a,p) -> a - p[0],
+                t2id
+        );
+
+        s.evaluate();
+
+        assertEquals(10.0, ta.getData().getValue(0));
+        assertEquals(10.0, ta.getData().getValue(1));
+        assertEquals(0.0, ta.getData().getValue(2));
+
+        t2.getData().add();
+        t2id.getData().setValue(4, 10);
+        t2.getData().remove();
+
+        s.evaluate();
+
+        assertEquals(5.0, ta.getData().getValue(0));
+        assertEquals(20.0, ta.getData().getValue(1));
+    }
+
+    @Test
+    public void accuAggregateTest() { // Built-in aggregates are updated incrementally
+        Schema s = this.createSchema();
+        Table t = s.getTable("T");
+        Table t2 = s.getTable("T2");
+
+        Column t2g = t2.getColumn("G");
+        Column t2id = t2.getColumn("Id");
+        Column t2m = s.createColumn("M", t2);
+        t2m.getData().setValue(0, 1.0);
+        t2m.getData().setValue(1, 3.0);
+        t2m.getData().setValue(2, 4.0);
+        t2m.getData().setValue(3, 100.0); // No group
+
+        Column sum = s.createColumn("Sum", t);
+        sum.accumulate(t2g, Aggregate.SUM, t2m);
+        Column count = s.createColumn("Count", t);
+        count.accumulate(t2g, Aggregate.COUNT, t2m);
+        Column mean = s.createColumn("Mean", t);
+        mean.accumulate(t2g, Aggregate.MEAN, t2m);
+        Column variance = s.createColumn("Variance", t);
+        variance.accumulate(t2g, Aggregate.VARIANCE, t2m);
+        Column min = s.createColumn("Min", t);
+        min.accumulate(t2g, Aggregate.MIN, t2m);
+        Column first = s.createColumn("First", t);
+        first.accumulate(t2g, Aggregate.FIRST, t2m);
+        Column last = s.createColumn("Last", t);
+        last.accumulate(t2g, Aggregate.LAST, t2m);
+
+        s.evaluate();
+
+        assertEquals(4.0, sum.getData().getValue(0));
+        assertEquals(4.0, sum.getData().getValue(1));
+        assertEquals(0.0, sum.getData().getValue(2));
+        assertEquals(2.0, count.getData().getValue(0));
+        assertEquals(0.0, count.getData().getValue(2));
+        assertEquals(2.0, mean.getData().getValue(0));
+        assertEquals(null, mean.getData().getValue(2));
+        assertEquals(2.0, variance.getData().getValue(0));
+        assertEquals(null, variance.getData().getValue(1));
+        assertEquals(1.0, min.getData().getValue(0));
+        assertEquals(1.0, first.getData().getValue(0));
+        assertEquals(3.0, last.getData().getValue(0));
+
+        // Invertible aggregates remove facts and others are recomputed
+        t2.getData().remove();
+        long id = t2.getData().add();
+        t2id.getData().setValue(id, 5);
+        t2m.getData().setValue(id, 6.0);
+
+        s.evaluate();
+
+        assertEquals(9.0, sum.getData().getValue(0));
+        assertEquals(2.0, count.getData().getValue(0));
+        assertEquals(4.5, mean.getData().getValue(0));
+        assertEquals(4.5, variance.getData().getValue(0));
+        assertEquals(3.0, min.getData().getValue(0));
+        assertEquals(3.0, first.getData().getValue(0));
+        assertEquals(6.0, last.getData().getValue(0));
+    }
+
+    @Test
+    public void accuSnapshotTest() throws java.io.IOException { // States of built-in aggregates are recomputed for restored data
+        Schema s = this.createAggregateSchema();
+        s.evaluate();
+        assertEquals(4.0, s.getTable("T").getColumn("Sum").getData().getValue(0));
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("bistro", ".snapshot");
+        file.toFile().deleteOnExit();
+        new org.conceptoriented.bistro.core.data.Snapshot(s).write(file);
+
+        Schema s2 = this.createAggregateSchema();
+        new org.conceptoriented.bistro.core.data.Snapshot(s2).read(file);
+        Table t2 = s2.getTable("T2");
+        long id = t2.getData().add();
+        t2.getColumn("Id").getData().setValue(id, 5);
+        t2.getColumn("M").getData().setValue(id, 10.0);
+        s2.evaluate();
+
+        assertEquals(14.0, s2.getTable("T").getColumn("Sum").getData().getValue(0));
+        assertEquals(4.0, s2.getTable("T").getColumn("Sum").getData().getValue(1));
+    }
+
+    @Test
+    public void accuChangedTest() { // Changes of existing facts lead to accumulation of all facts
+        Schema s = this.createAggregateSchema();
+        Table t = s.getTable("T");
+        Table t2 = s.getTable("T2");
+        Column sum = t.getColumn("Sum");
+        Column sum2 = s.createColumn("Sum2", t);
+        sum2.getData().setDefaultValue(0.0);
+        sum2.accumulate(t2.getColumn("G"), (a,p) -> (Double)a + (Double)p[0], null, t2.getColumn("M"));
+        s.evaluate();
+        assertEquals(4.0, sum2.getData().getValue(0));
+
+        // Changed value
+        t2.getColumn("M").getData().setValue(0, 100.0);
+        t2.getColumn("M").getData().setChanged(0);
+        s.evaluate();
+        assertEquals(103.0, sum.getData().getValue(0));
+        assertEquals(103.0, sum2.getData().getValue(0));
+
+        // Changed group (via the link column)
+        t2.getColumn("Id").getData().setValue(2, 5);
+        t2.getColumn("Id").getData().setChanged(2);
+        s.evaluate();
+        assertEquals(107.0, sum.getData().getValue(0));
+        assertEquals(0.0, sum.getData().getValue(1));
+        assertEquals(107.0, sum2.getData().getValue(0));
+        assertEquals(0.0, sum2.getData().getValue(1));
+    }
+
+    Schema createAggregateSchema() {
+        Schema s = this.createSchema();
+        Table t2 = s.getTable("T2");
+        Column t2m = s.createColumn("M", t2);
+        t2m.getData().setValue(0, 1.0);
+        t2m.getData().setValue(1, 3.0);
+        t2m.getData().setValue(2, 4.0);
+        t2m.getData().setValue(3, 100.0); // No group
+
+        Column sum = s.createColumn("Sum", s.getTable("T"));
+        sum.accumulate(t2.getColumn("G"), Aggregate.SUM, t2m);
+        return s;
+    }
+
+    @Test
+    public void accuParallelTest() { // Partitions of facts are accumulated in parallel and partial aggregates are merged
+        Schema s = new Schema("My Schema");
+        s.setExecutor(new java.util.concurrent.ForkJoinPool(4));
+
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        ta.getData().setDefaultValue(0.0);
+        t.getData().add(10);
+
+        Table t2 = s.createTable("T2");
+        Column t2g = s.createColumn("G", t2, t);
+        Column t2m = s.createColumn("M", t2);
+
+        long count = 5 * 16384 + 7; // Several partitions of parallel evaluation
+        t2.getData().add(count);
+        for(long i=0; i<count; i++) {
+            t2g.getData().setValue(i, i % 10);
+            t2m.getData().setValue(i, 1.0);
+        }
+
+        ta.accumulate(
+                t2g,
+                (EvalAccumulate & ThreadSafe) (a,p) -> (Double)a + (Double)p[0],
+                null,
+                (a1,a2) -> (Double)a1 + (Double)a2,
+                t2m
+        );
+        Column tc = s.createColumn("C", t); // Built-in aggregates merge partial states
+        tc.accumulate(t2g, Aggregate.COUNT, t2m);
+        s.evaluate();
+
+        double total = 0.0;
+        for(long g=0; g<10; g++) total += (Double)ta.getData().getValue(g);
+        assertEquals((double)count, total, 0.0);
+        assertEquals((double)(count / 10 + 1), (Double)ta.getData().getValue(0L), 0.0);
+        assertEquals((double)(count / 10), (Double)ta.getData().getValue(9L), 0.0);
+        assertEquals((double)(count / 10 + 1), (Double)tc.getData().getValue(0L), 0.0);
+        assertEquals((double)(count / 10), (Double)tc.getData().getValue(9L), 0.0);
+    }
 }
@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -38,6 +40,139 @@ public class CalculateTests {
         assertEquals(13.0, (Double) tb.getData().getValue(2), Double.MIN_VALUE);
     }
 
+    @Test
+    public void parallelTest() { // Chunks of the range are evaluated in parallel
+        Schema s = new Schema("My Schema");
+        s.setExecutor(new java.util.concurrent.ForkJoinPool(4));
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        Column tb = s.createColumn("B", t);
+
+        long count = 5 * 16384 + 7; // Several chunks of parallel evaluation
+        t.getData().add(count);
+        for(long i=0; i<count; i++) ta.getData().setValue(i, (double)i);
+
+        tb.calculate(
+                (EvalCalculate & ThreadSafe) p -> 2.0 * (Double) p[0] + 1,
+                ta
+        );
+        s.evaluate();
+
+        assertEquals(1.0, (Double) tb.getData().getValue(0), Double.MIN_VALUE);
+        assertEquals(2.0 * (count - 1) + 1, (Double) tb.getData().getValue(count - 1), Double.MIN_VALUE);
+
+        // Primitive functions get exactly their parameters also in parallel mode
+        ta.getData().setValue(count - 2, null);
+        tb.calculate(
+                (EvalCalculateDouble & ThreadSafe) p -> p.length == 1 ? p[0] + 1 : -1.0,
+                ta
+        );
+        s.evaluate();
+        assertEquals(1.0, (Double) tb.getData().getValue(0), Double.MIN_VALUE);
+        assertEquals(null, tb.getData().getValue(count - 2)); // NaN is null
+        assertEquals((double)count, (Double) tb.getData().getValue(count - 1), Double.MIN_VALUE);
+        ta.getData().setValue(count - 2, (double)(count - 2));
+
+        // Errors of the function are reported
+        tb.calculate(
+                (EvalCalculate & ThreadSafe) p -> { if((Double)p[0] == 50000.0) throw new IllegalArgumentException("Wrong value"); return p[0]; },
+                ta
+        );
+        s.evaluate();
+        assertEquals(1, tb.getErrors().size());
+    }
+
+    @Test
+    public void doubleTest() { // Primitive functions are evaluated without boxing
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, td);
+        Column tb = s.createColumn("B", t);
+
+        t.getData().add(3);
+        ta.getData().setValue(0, 1.0);
+        ta.getData().setValue(1, null);
+        ta.getData().setValue(2, 3.0);
+
+        tb.calculate((EvalCalculateDouble) p -> p[0] + 1.0, ta);
+        s.evaluate();
+
+        assertEquals(2.0, tb.getData().getValue(0));
+        assertEquals(null, tb.getData().getValue(1)); // Null is propagated as NaN
+        assertEquals(4.0, tb.getData().getValue(2));
+    }
+
+    @Test
+    public void blockTest() { // Outputs are computed for blocks of inputs
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, td);
+        Column tb = s.createColumn("B", t, td);
+        Column tc = s.createColumn("C", t, td);
+
+        long count = 2 * 1024 + 7; // Several blocks
+        t.getData().add(count);
+        for(long i=0; i<count; i++) {
+            ta.getData().setValue(i, (double)i);
+            tb.getData().setValue(i, 1.0);
+        }
+        tb.getData().setValue(5, null);
+
+        tc.calculate(
+                (p, r, n) -> { for(int k=0; k<n; k++) r[k] = 2.0 * p[0][k] + p[1][k]; },
+                ta, tb
+        );
+        s.evaluate();
+
+        assertEquals(1.0, (Double) tc.getData().getValue(0), Double.MIN_VALUE);
+        assertEquals(null, tc.getData().getValue(5)); // Null is propagated as NaN
+        assertEquals(2.0 * (count - 1) + 1, (Double) tc.getData().getValue(count - 1), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void changedRangesTest() { // Only records with changed parameters are re-evaluated
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        Column tb = s.createColumn("B", t);
+        Column tc = s.createColumn("C", t);
+
+        t.getData().add(10);
+        for(long i=0; i<10; i++) ta.getData().setValue(i, (double)i);
+
+        int[] count = {0};
+        tb.calculate(p -> { count[0]++; return (Double)p[0] + 1; }, ta);
+        tc.calculate(p -> (Double)p[0] * 2, tb);
+        s.evaluate();
+        assertEquals(10, count[0]);
+
+        // Changed ranges are merged
+        ta.getData().setValue(2, 20.0);
+        ta.getData().setValue(3, 30.0);
+        ta.getData().setValue(7, 70.0);
+        ta.getData().setChanged(3);
+        ta.getData().setChanged(2);
+        ta.getData().setChanged(new Range(7, 8));
+        assertEquals(Arrays.asList(new Range(2, 4), new Range(7, 8)), ta.getData().getChangedRanges());
+
+        // Changes are propagated to dependents of dependents
+        t.getData().add();
+        ta.getData().setValue(10, 100.0);
+        s.evaluate();
+        assertEquals(14, count[0]);
+        assertEquals(42.0, (Double) tc.getData().getValue(2), Double.MIN_VALUE);
+        assertEquals(142.0, (Double) tc.getData().getValue(7), Double.MIN_VALUE);
+        assertEquals(202.0, (Double) tc.getData().getValue(10), Double.MIN_VALUE);
+        assertEquals(0, ta.getData().getChangedRanges().size());
+
+        // Changes with unknown scope lead to full re-evaluation
+        ta.getData().setChanged();
+        s.evaluate();
+        assertEquals(25, count[0]);
+    }
+
     Schema createSchema() {
         Schema s = new Schema("My Schema");
         Table t = s.createTable("T");
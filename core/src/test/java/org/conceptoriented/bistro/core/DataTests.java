@@ -0,0 +1,601 @@
+package org.conceptoriented.bistro.core;
+
+import org.conceptoriented.bistro.core.data.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataTests {
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @Test
+    public void primitiveTest() { // Primitive column storage is chosen depending on the column type
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table ti = s.createTable("Integer");
+        Table tl = s.createTable("Long");
+
+        Table t = s.createTable("T");
+        Column cd = s.createColumn("D", t, td);
+        Column ci = s.createColumn("I", t, ti);
+        Column cl = s.createColumn("L", t, tl);
+        Column co = s.createColumn("O", t);
+
+        assertTrue(cd.getData() instanceof ColumnDataDouble);
+        assertTrue(ci.getData() instanceof ColumnDataInteger);
+        assertTrue(cl.getData() instanceof ColumnDataLong);
+        assertTrue(co.getData() instanceof ColumnDataImpl);
+
+        cd.getData().setDefaultValue(0.0);
+        t.getData().add(100);
+        for(long i=0; i<100; i++) {
+            cd.getData().setDouble(i, i / 2.0);
+            ci.getData().setValue(i, (int)i);
+            cl.getData().setLong(i, i * 10);
+        }
+
+        assertEquals(25.0, cd.getData().getValue(50));
+        assertEquals(50, ci.getData().getValue(50));
+        assertEquals(500L, cl.getData().getValue(50));
+        assertEquals(25.0, cd.getData().getDouble(50), Double.MIN_VALUE);
+        assertEquals(500L, cl.getData().getLong(50));
+
+        // Nulls
+        cd.getData().setValue(1, null);
+        ci.getData().setValue(1, null);
+        assertEquals(null, cd.getData().getValue(1));
+        assertEquals(null, ci.getData().getValue(1));
+
+        // Search in sorted values
+        assertEquals(60, cl.getData().findSorted(600L));
+        assertEquals(-61-1, cl.getData().findSorted(605L)); // Insertion id
+        assertEquals(61, cl.getData().findSortedFromStart(605L));
+
+        // Remove and append many records so that the arrays are compacted and grown
+        t.getData().remove(90);
+        t.getData().add(200);
+        cd.getData().setDouble(299, 1.5);
+        assertEquals(1.5, cd.getData().getValue(299));
+        assertEquals(0.0, cd.getData().getValue(298)); // Default value
+        assertEquals(45.0, cd.getData().getValue(90));
+
+        // Non-numeric values are rejected
+        try {
+            cd.getData().setValue(90, "abc");
+            assertTrue(false);
+        }
+        catch(BistroException e) {}
+
+        // Storage is re-created with the same default value if the output type is changed
+        co.getData().setDefaultValue(1.0);
+        co.setOutput(td);
+        assertTrue(co.getData() instanceof ColumnDataDouble);
+        assertEquals(1.0, co.getData().getDefaultValue());
+        assertEquals(1.0, co.getData().getValue(100));
+
+        // Values are reset also if the storage is kept
+        Column ck = s.createColumn("K", t, s.createTable("A"));
+        ck.getData().setValue(100, 5L);
+        ck.setOutput(s.createTable("B"));
+        assertEquals(null, ck.getData().getValue(100));
+    }
+
+    @Test
+    public void bulkAddTest() { // Records are appended in columnar form
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table ti = s.createTable("Integer");
+        Table tl = s.createTable("Long");
+
+        Table t = s.createTable("T");
+        Column cd = s.createColumn("D", t, td);
+        Column ci = s.createColumn("I", t, ti);
+        Column cl = s.createColumn("L", t, tl);
+        Column co = s.createColumn("O", t);
+
+        t.getData().add(1);
+        Range range = t.getData().add(
+                3,
+                java.util.Arrays.asList(cd, ci, cl, co),
+                java.util.Arrays.asList(new double[] {1.5, Double.NaN, 3.5}, new int[] {1, 2, ColumnDataInteger.NULL}, new long[] {10L, 20L, 30L, 40L}, new Object[] {"a", null, "c"})
+        );
+
+        assertEquals(1L, range.start);
+        assertEquals(4L, range.end);
+        assertEquals(4L, t.getData().getLength());
+
+        assertEquals(1.5, cd.getData().getValue(1));
+        assertEquals(null, cd.getData().getValue(2));
+        assertEquals(2, ci.getData().getValue(2));
+        assertEquals(null, ci.getData().getValue(3));
+        assertEquals(30L, cl.getData().getValue(3));
+        assertEquals("c", co.getData().getValue(3));
+        assertEquals(null, co.getData().getValue(2));
+
+        // Wrong input is rejected without adding records
+        try {
+            t.getData().add(3, java.util.Arrays.asList(cd, ci), java.util.Arrays.asList(new double[] {1.0, 2.0, 3.0}, new int[] {1, 2}));
+            assertTrue(false);
+        }
+        catch(BistroException e) {}
+        try {
+            t.getData().add(1, java.util.Arrays.asList(cd, s.createColumn("X", s.createTable("T2"), td)), java.util.Arrays.asList(new double[] {1.0}, new double[] {1.0}));
+            assertTrue(false);
+        }
+        catch(BistroException e) {}
+        assertEquals(4L, t.getData().getLength());
+    }
+
+    @Test
+    public void chunkedTest() { // Chunks are allocated when appending and released when removing
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column c = s.createColumn("C", t);
+        c.setData(new ColumnDataChunked(0, 0, 4));
+        c.getData().setDefaultValue(0.0);
+
+        t.getData().add(10);
+        for(long i=0; i<10; i++) {
+            c.getData().setValue(i, (double)i);
+        }
+        assertEquals(9.0, c.getData().getValue(9));
+
+        // Removed records are physically deleted only after evaluation
+        t.getData().remove(6);
+        assertEquals(0, c.getData().getIdRange().start);
+        s.evaluate();
+        assertEquals(6, c.getData().getIdRange().start);
+        assertEquals(7.0, c.getData().getValue(7));
+
+        t.getData().add(100);
+        c.getData().setValue(109, 1.5);
+        assertEquals(1.5, c.getData().getValue(109));
+        assertEquals(0.0, c.getData().getValue(108)); // Default value
+        assertEquals(9.0, c.getData().getValue(9));
+
+        t.getData().remove(100);
+        s.evaluate();
+        assertEquals(106, c.getData().getIdRange().start);
+        assertEquals(1.5, c.getData().getValue(109));
+
+        // Sorted search
+        assertEquals(106, c.getData().findSortedFromStart(0.0));
+    }
+
+    @Test
+    public void offHeapTest() throws java.io.IOException { // Numeric columns of off-heap tables store data in direct buffers
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table tl = s.createTable("Long");
+
+        Table t = s.createTable("T", true);
+        Column cd = s.createColumn("D", t, td);
+        Column cl = s.createColumn("L", t, tl);
+        Column co = s.createColumn("O", t);
+
+        assertTrue(cd.getData() instanceof ColumnDataOffHeap);
+        assertTrue(cl.getData() instanceof ColumnDataOffHeap);
+        assertTrue(co.getData() instanceof ColumnDataImpl); // Objects cannot be stored off-heap
+
+        t.getData().add(10);
+        for(long i=0; i<10; i++) {
+            cd.getData().setDouble(i, i * 1.5);
+            cl.getData().setValue(i, i);
+        }
+        cd.getData().setValue(9, null);
+
+        assertEquals(3.0, cd.getData().getValue(2));
+        assertEquals(null, cd.getData().getValue(9));
+        assertEquals(7L, cl.getData().getValue(7));
+        assertEquals(7, cl.getData().findSorted(7L));
+
+        // Segments of a memory-mapped file
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("bistro", ".dat");
+        file.toFile().deleteOnExit();
+        ColumnData data = new ColumnDataOffHeap(0, 0, ColumnDataOffHeap.LONG, 4, file);
+        data.add(10);
+        data.setLong(9, 99L);
+        data.remove(8);
+        assertEquals(8, data.getIdRange().start);
+        assertEquals(99L, data.getValue(9));
+        assertEquals(3 * 4 * 8, java.nio.file.Files.size(file));
+
+        // Slots of removed segments are reused
+        data.add(8);
+        data.setLong(17, 77L);
+        assertEquals(99L, data.getValue(9));
+        assertEquals(77L, data.getValue(17));
+        assertEquals(3 * 4 * 8, java.nio.file.Files.size(file));
+
+        // Reset truncates the file and close releases it
+        data.reset(0, 0);
+        assertEquals(0, java.nio.file.Files.size(file));
+        ((ColumnDataOffHeap)data).close();
+        java.nio.file.Files.delete(file);
+    }
+
+    @Test
+    public void sortedTest() { // Search in sorted values with duplicates and sorted index for unsorted values
+        Schema s = new Schema("My Schema");
+        Table tl = s.createTable("Long");
+
+        Table t = s.createTable("T");
+        Column cl = s.createColumn("L", t, tl); // Sorted with duplicates
+        Column co = s.createColumn("O", t); // Sorted with duplicates
+        Column cu = s.createColumn("U", t); // Unsorted
+
+        t.getData().add(10);
+        for(long i=0; i<10; i++) {
+            cl.getData().setValue(i, i / 3); // 0 0 0 1 1 1 2 2 2 3
+            co.getData().setValue(i, (double)(i / 3));
+            cu.getData().setValue(i, (double)((i * 7) % 10)); // 0 7 4 1 8 5 2 9 6 3
+        }
+
+        assertEquals(3, cl.getData().findSorted(1L)); // First of duplicates
+        assertEquals(3, co.getData().findSorted(1.0));
+        assertEquals(-10-1, cl.getData().findSorted(4L));
+        assertEquals(3, cl.getData().findSortedLower(1L));
+        assertEquals(6, cl.getData().findSortedUpper(1L));
+        assertEquals(6, co.getData().findSortedUpper(1.0));
+        assertEquals(3, cl.getData().findSortedRange(1L, 3L).start);
+        assertEquals(9, cl.getData().findSortedRange(1L, 3L).end);
+
+        long[] ids = t.getData().findRange(co, 1.0, 2.0);
+        assertEquals(3, ids.length);
+        assertEquals(3, ids[0]);
+
+        // Unsorted values are found using sorted index
+        t.getData().createSortedIndex(cu);
+        ids = t.getData().findRange(cu, 2.0, 5.0);
+        assertEquals(3, ids.length);
+        assertEquals(6, ids[0]); // Value 2
+        assertEquals(9, ids[1]); // Value 3
+        assertEquals(2, ids[2]); // Value 4
+
+        // Added, changed and removed records
+        t.getData().add();
+        cu.getData().setValue(10, 2.5);
+        t.getData().setValues(9, java.util.Arrays.asList(cu), java.util.Arrays.asList(10.0));
+        t.getData().remove(3);
+        ids = t.getData().findRange(cu, 2.0, 5.0);
+        assertEquals(2, ids.length);
+        assertEquals(6, ids[0]);
+        assertEquals(10, ids[1]);
+
+        // Greater values are appended and smaller values are merged
+        for(long i=0; i<20; i++) {
+            long id = t.getData().add();
+            cu.getData().setValue(id, 20.0 + i);
+        }
+        ids = t.getData().findRange(cu, 20.0, 40.0);
+        assertEquals(20, ids.length);
+        assertEquals(11, ids[0]);
+        assertEquals(30, ids[19]);
+        long id = t.getData().add();
+        cu.getData().setValue(id, 2.0);
+        ids = t.getData().findRange(cu, 2.0, 3.0);
+        assertEquals(3, ids.length);
+        assertEquals(6, ids[0]);
+        assertEquals(31, ids[1]); // Equal values are ordered by ids
+        assertEquals(10, ids[2]); // Value 2.5
+
+        // Retention
+        assertEquals(3, t.getData().remove(cl, 2L));
+        assertEquals(6, t.getData().getIdRange().start);
+    }
+
+    @Test
+    public void dictionaryTest() { // String columns store codes of values in a dictionary
+        Schema s = new Schema("My Schema");
+        Table ts = s.createTable("String");
+
+        Table t = s.createTable("T");
+        Column c = s.createColumn("S", t, ts);
+        Column cd = s.createColumn("D", t);
+        assertTrue(c.getData() instanceof ColumnDataImpl); // Dictionary encoding is used only if requested
+        c.setStorageProvider(new StorageProviderImpl(true));
+        assertTrue(c.getData() instanceof ColumnDataDictionary);
+
+        t.getData().add(6);
+        for(long i=0; i<6; i++) {
+            c.getData().setValue(i, i % 2 == 0 ? "even" : "odd");
+            cd.getData().setValue(i, (double)(i / 2));
+        }
+        c.getData().setValue(5, null);
+
+        assertEquals("odd", c.getData().getValue(3));
+        assertEquals(null, c.getData().getValue(5));
+        assertEquals(2, ((ColumnDataDictionary)c.getData()).getDictionary().size());
+
+        // Search by comparing codes
+        java.util.List<Column> cols = java.util.Arrays.asList(c, cd);
+        assertEquals(3, t.getData().findValues(java.util.Arrays.asList("odd", 1.0), cols));
+        assertTrue(t.getData().findValues(java.util.Arrays.asList("none", 1.0), cols) < 0);
+
+        t.getData().createIndex(cols);
+        assertEquals(4, t.getData().findValues(java.util.Arrays.asList("even", 2.0), cols));
+        assertEquals(5, t.getData().findValues(java.util.Arrays.asList(null, 2.0), cols));
+        assertTrue(t.getData().findValues(java.util.Arrays.asList("none", 1.0), cols) < 0);
+    }
+
+    @Test
+    public void nullTest() { // Nulls of primitive columns are tracked in validity bitmaps
+        Schema s = new Schema("My Schema");
+        Table tl = s.createTable("Long");
+
+        Table t = s.createTable("T");
+        Column cl = s.createColumn("L", t, tl);
+        Column co = s.createColumn("O", t);
+
+        t.getData().add(200);
+        cl.getData().setValue(new Range(0, 200), 1L);
+        cl.getData().setNull(new Range(10, 150));
+        cl.getData().setValue(170, null);
+        cl.getData().setValue(180, Long.MIN_VALUE); // Can be stored as an object
+        co.getData().setValue(new Range(0, 200), 1L);
+        co.getData().setNull(new Range(10, 150));
+
+        assertTrue(cl.getData().isNull(10));
+        assertTrue(!cl.getData().isNull(150));
+        assertEquals(Long.MIN_VALUE, cl.getData().getValue(180));
+        assertEquals(141, cl.getData().countNulls(new Range(0, 200)));
+        assertEquals(141, co.getData().countNulls(new Range(0, 180)) + 1);
+        assertEquals(150, cl.getData().nextValid(10, 200));
+        assertEquals(170, cl.getData().nextNull(150, 200));
+        assertEquals(200, cl.getData().nextNull(171, 200));
+        assertEquals(150, co.getData().nextValid(10, 200));
+
+        // Bitmap is shifted along with the values when the array is compacted
+        t.getData().remove(101);
+        s.evaluate();
+        t.getData().add(10);
+        assertEquals(50, cl.getData().countNulls(new Range(101, 200)));
+        assertEquals(null, cl.getData().getValue(149));
+        assertEquals(1L, cl.getData().getValue(150));
+        assertEquals(200, cl.getData().nextNull(171, 210)); // Added with default null value
+    }
+
+    @Test
+    public void snapshotTest() throws java.io.IOException { // Data of all tables and columns is written to a file and read into a new schema
+        Schema s = this.createSnapshotSchema();
+        Table t = s.getTable("T");
+        Column cd = t.getColumn("D");
+        Column cs = t.getColumn("S");
+        Column ct = t.getColumn("Time");
+        Column cl = t.getColumn("L");
+
+        t.getData().add(100);
+        for(long i=0; i<100; i++) {
+            cd.getData().setValue(i, i * 1.5);
+            cs.getData().setValue(i, i % 2 == 0 ? "even" : "odd");
+            ct.getData().setValue(i, java.time.Instant.ofEpochSecond(i));
+        }
+        cd.getData().setValue(15, null);
+        cl.getData().setValue(20, Long.MIN_VALUE); // Valid value equal to the special value of nulls
+        t.getData().remove(10);
+        s.evaluate();
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("bistro", ".snapshot");
+        file.toFile().deleteOnExit();
+        new Snapshot(s).write(file);
+
+        // Read into a schema with the same definitions
+        Schema s2 = this.createSnapshotSchema();
+        new Snapshot(s2).read(file);
+        Table t2 = s2.getTable("T");
+        Column cd2 = t2.getColumn("D");
+        Column cc2 = t2.getColumn("C");
+
+        assertEquals(10, t2.getData().getIdRange().start);
+        assertEquals(100, t2.getData().getIdRange().end);
+        assertEquals(10, cd2.getData().getIdRange().start);
+        assertTrue(cd2.getData() instanceof ColumnDataDouble); // Storage of the column
+        assertEquals(30.0, cd2.getData().getValue(20));
+        assertEquals(null, cd2.getData().getValue(15));
+        assertEquals(Long.MIN_VALUE, t2.getColumn("L").getData().getValue(20));
+        assertEquals(null, t2.getColumn("L").getData().getValue(21));
+        assertEquals(31.0, cc2.getData().getValue(20));
+        assertEquals("odd", t2.getColumn("S").getData().getValue(21));
+        assertEquals(java.time.Instant.ofEpochSecond(21), t2.getColumn("Time").getData().getValue(21));
+        assertTrue(!cc2.isDirty()); // Derived columns are not re-evaluated
+
+        // Restored data is changed and appended
+        t2.getData().add();
+        cd2.getData().setValue(100, 1.0);
+        cd2.getData().setValue(20, 2.0);
+        s2.evaluate();
+        assertEquals(2.0, cc2.getData().getValue(100));
+        assertEquals(0, t2.getData().getRemovedRange().getLength());
+
+        // Changes are not written to the file
+        Schema s3 = this.createSnapshotSchema();
+        new Snapshot(s3).read(file);
+        assertEquals(30.0, s3.getTable("T").getColumn("D").getData().getValue(20));
+
+        // Numeric columns of off-heap tables are mapped
+        Schema s4 = this.createSnapshotSchema(true);
+        new Snapshot(s4).read(file);
+        Column cd4 = s4.getTable("T").getColumn("D");
+        assertTrue(cd4.getData() instanceof ColumnDataOffHeap);
+        assertEquals(30.0, cd4.getData().getValue(20));
+        assertEquals(null, cd4.getData().getValue(15));
+    }
+
+    @Test
+    public void snapshotStatefulTest() throws java.io.IOException { // Accumulate and roll columns are re-evaluated after reading because their state is not stored
+        Schema s = this.createStatefulSchema();
+        Table f = s.getTable("F");
+        this.addFact(f, 0, 10.0);
+        this.addFact(f, 0, 10.0);
+        this.addFact(f, 1, 10.0);
+        s.evaluate();
+        assertEquals(20.0, s.getTable("G").getColumn("Sum").getData().getValue(0));
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("bistro", ".snapshot");
+        file.toFile().deleteOnExit();
+        new Snapshot(s).write(file);
+
+        // State of operations is changed after writing
+        this.addFact(f, 0, 100.0);
+        s.evaluate();
+        assertEquals(120.0, s.getTable("G").getColumn("Sum").getData().getValue(0));
+
+        // Read into the same schema and a new schema and continue with new facts
+        Schema s2 = this.createStatefulSchema();
+        for(Schema schema : java.util.Arrays.asList(s, s2)) {
+            new Snapshot(schema).read(file);
+            Table f2 = schema.getTable("F");
+            this.addFact(f2, 0, 1.0);
+            schema.evaluate();
+            assertEquals(21.0, schema.getTable("G").getColumn("Sum").getData().getValue(0));
+            assertEquals(10.0, schema.getTable("G").getColumn("Sum").getData().getValue(1));
+            assertEquals(11.0, f2.getColumn("R").getData().getValue(3));
+        }
+    }
+
+    Schema createStatefulSchema() {
+        Schema s = new Schema("My Schema");
+        Table g = s.createTable("G");
+        g.getData().add(2);
+
+        Table f = s.createTable("F");
+        Column fg = s.createColumn("Group", f, g);
+        Column fv = s.createColumn("V", f);
+
+        s.createColumn("Sum", g).accumulate(fg, Aggregate.SUM, fv);
+        Column fr = s.createColumn("R", f);
+        fr.getData().setDefaultValue(0.0);
+        fr.roll(2, 0, (a,d,p) -> (Double)a + (Double)p[0], fv); // Current and previous fact
+        return s;
+    }
+
+    void addFact(Table f, long group, double value) {
+        long id = f.getData().add();
+        f.getColumn("Group").getData().setValue(id, group);
+        f.getColumn("V").getData().setValue(id, value);
+    }
+
+    Schema createSnapshotSchema() {
+        return this.createSnapshotSchema(false);
+    }
+    Schema createSnapshotSchema(boolean offHeap) {
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table ts = s.createTable("String");
+        Table tl = s.createTable("Long");
+        Table t = s.createTable("T", offHeap);
+        t.setStorageProvider(new StorageProviderImpl(true));
+        s.createColumn("D", t, td);
+        s.createColumn("S", t, ts);
+        s.createColumn("L", t, tl);
+        s.createColumn("Time", t);
+        Column cc = s.createColumn("C", t, td);
+        cc.calculate(
+                p -> p[0] == null ? null : (Double)p[0] + 1.0,
+                t.getColumn("D")
+        );
+        return s;
+    }
+
+    @Test
+    public void timestampTest() { // Time stamps are stored in packed blocks of deltas
+        Schema s = new Schema("My Schema");
+        Table ti = s.createTable("Instant");
+
+        Table t = s.createTable("T");
+        Column c = s.createColumn("Time", t, ti);
+        assertTrue(c.getData() instanceof ColumnDataTimestamp);
+
+        java.time.Instant start = java.time.Instant.parse("2018-01-01T00:00:00.000Z");
+        for(long i=0; i<3000; i++) { // Several blocks are sealed when appending
+            long id = t.getData().add();
+            c.getData().setValue(id, start.plusMillis(i * 10));
+        }
+        c.getData().setValue(2999, null);
+
+        assertEquals(start.plusMillis(10), c.getData().getValue(1));
+        assertEquals(start.plusMillis(29980), c.getData().getValue(2998));
+        assertEquals(null, c.getData().getValue(2999));
+        assertEquals(start.plusMillis(1000).toEpochMilli() * 1_000_000L, c.getData().getLong(100));
+
+        assertEquals(100, c.getData().findSorted(start.plusMillis(1000)));
+        assertEquals(101, c.getData().findSortedLower(start.plusMillis(1001)));
+
+        // Change a value in a sealed block
+        c.getData().setValue(10, start.plusMillis(101));
+        s.evaluate();
+        assertEquals(start.plusMillis(101), c.getData().getValue(10));
+        assertEquals(start.plusMillis(110), c.getData().getValue(11));
+
+        // Retention removes whole blocks
+        assertEquals(2048, t.getData().remove(c, start.plusMillis(20480)));
+        s.evaluate();
+        assertEquals(2048, c.getData().getIdRange().start);
+        assertEquals(start.plusMillis(20480), c.getData().getValue(2048));
+    }
+
+    @Test
+    public void storageTest() { // Storage of tables and columns is chosen by storage providers
+        StorageProvider chunked = new StorageProviderImpl() {
+            @Override
+            public ColumnData createColumnData(Column column, long start, long end) {
+                return new ColumnDataChunked(start, end, 16);
+            }
+        };
+
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column c1 = s.createColumn("C1", t, td);
+        Column c2 = s.createColumn("C2", t, td);
+        Column c4 = s.createColumn("C4", t, s.createTable("Long"));
+        assertTrue(c1.getData() instanceof ColumnDataDouble);
+
+        t.getData().add(100);
+        c1.getData().setValue(50, 5.0);
+        c2.getData().setValue(50, 5.0);
+        c4.getData().setValue(50, Long.MIN_VALUE);
+        t.getData().remove(10);
+        t.getData().createIndex(java.util.Arrays.asList(c2));
+        t.getData().createSortedIndex(c2);
+        s.evaluate();
+
+        // Column storage is changed and existing data is copied
+        c1.setStorageProvider(chunked);
+        assertTrue(c1.getData() instanceof ColumnDataChunked);
+        assertEquals(10, c1.getData().getIdRange().start);
+        assertEquals(5.0, c1.getData().getValue(50));
+
+        // Columns of the table without their own storage are changed
+        t.setStorageProvider(new StorageProviderImpl());
+        assertTrue(c1.getData() instanceof ColumnDataChunked);
+        assertTrue(c2.getData() instanceof ColumnDataDouble);
+        assertEquals(90, t.getData().getLength());
+        assertEquals(Long.MIN_VALUE, c4.getData().getValue(50));
+        assertEquals(null, c4.getData().getValue(51));
+
+        // Indexes are created in the new table storage
+        assertEquals(1, t.getData().getIndexes().size());
+        assertEquals(c2, t.getData().getSortedIndexes().get(0));
+        assertEquals(50, t.getData().findValues(java.util.Arrays.asList(5.0), java.util.Arrays.asList(c2)));
+        assertEquals(50, t.getData().findRange(c2, 5.0, 6.0)[0]);
+
+        // New columns use the storage of the schema
+        s.setStorageProvider(chunked);
+        Table t2 = s.createTable("T2");
+        Column c3 = s.createColumn("C3", t2, td);
+        assertTrue(c3.getData() instanceof ColumnDataChunked);
+        assertEquals(5.0, c2.getData().getValue(50));
+    }
+
+}
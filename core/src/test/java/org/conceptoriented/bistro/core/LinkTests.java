@@ -47,6 +47,136 @@ public class LinkTests {
         assertEquals(-1L, t2c.getData().getValue(1)); // Not found
     }
 
+    @Test
+    public void linkPathTest() { // Values of multi-segment paths are gathered for blocks of ids
+        Schema s = createSchema();
+        Table t = s.getTable("T");
+        Table t2 = s.getTable("T2");
+        Column t2c = t2.getColumn("C");
+        t2c.link(
+                new Column[] {t2.getColumn("A"), t2.getColumn("B")},
+                new Column[] {t.getColumn("A"), t.getColumn("B")}
+        );
+
+        // Table referencing T2
+        Table t3 = s.createTable("T3");
+        Column t3l = s.createColumn("L", t3, t2);
+        t3l.noop(true);
+        Column t3e = s.createColumn("E", t3, t);
+        t3e.link(
+                new ColumnPath[] {new ColumnPath(t3l, t2.getColumn("A"))},
+                t.getColumn("A")
+        );
+
+        t3.getData().add(4);
+        t3l.getData().setValue(0, 0L);
+        t3l.getData().setValue(1, 1L);
+        t3l.getData().setValue(2, null);
+        t3l.getData().setValue(3, -1L);
+        s.evaluate();
+
+        assertEquals(0L, t3e.getData().getValue(0));
+        assertEquals(-1L, t3e.getData().getValue(1));
+
+        // Invalid ids in intermediate segments are propagated
+        long[] ids = new long[4];
+        new ColumnPath(t3l, t2c).getLongs(0, ids, 4);
+        assertEquals(0L, ids[0]);
+        assertEquals(-1L, ids[1]);
+        assertEquals(-1L, ids[2]);
+        assertEquals(-1L, ids[3]);
+
+        Object[] values = new Object[4];
+        new ColumnPath(t3l, t2.getColumn("B")).getValues(0, values, 4);
+        assertEquals("bbb", values[0]);
+        assertEquals("ccc", values[1]);
+        assertEquals(null, values[2]);
+        assertEquals(null, values[3]);
+
+        // Invalid intermediate output is returned as is for one id but as null for blocks
+        ColumnPath path = new ColumnPath(t3l, t2c);
+        assertEquals(-1L, path.getValue(3));
+        path.getValues(1, values, 3, ids);
+        assertEquals(-1L, values[0]); // Output of the last segment is returned as is
+        assertEquals(null, values[1]);
+        assertEquals(null, values[2]);
+
+        // Buffers are reused for next blocks
+        double[] doubles = new double[4];
+        t2.getColumn("A").getData().setValue(1, 5.0);
+        new ColumnPath(t3l, t2.getColumn("A")).getDoubles(0, doubles, 4, ids);
+        assertEquals(5.0, doubles[1], Double.MIN_VALUE);
+        assertTrue(Double.isNaN(doubles[2]));
+        assertTrue(Double.isNaN(doubles[3]));
+    }
+
+    @Test
+    public void linkAddedTargetTest() { // Facts without a match are resolved again when records are added to the type table
+        Schema s = new Schema("My Schema");
+        Table d = s.createTable("D");
+        Column dk = s.createColumn("K", d);
+        dk.noop(true);
+
+        Table f = s.createTable("F");
+        Column fv = s.createColumn("V", f);
+        Column fl = s.createColumn("L", f, d);
+        fl.link(new Column[] {fv}, dk);
+
+        long id = f.getData().add();
+        fv.getData().setValue(id, "x");
+        id = f.getData().add();
+        fv.getData().setValue(id, "y");
+        s.evaluate();
+        assertEquals(-1L, fl.getData().getValue(0));
+        assertEquals(-1L, fl.getData().getValue(1));
+
+        id = d.getData().add();
+        dk.getData().setValue(id, "x");
+        s.evaluate();
+        assertEquals(0L, fl.getData().getValue(0));
+        assertEquals(-1L, fl.getData().getValue(1));
+
+        // Existing links become invalid if type records are removed
+        d.getData().remove();
+        s.evaluate();
+        assertEquals(-1L, fl.getData().getValue(0));
+    }
+
+    @Test
+    public void linkUpdatedKeyTest() { // Keys of the type table changed directly are used by links of new facts
+        Schema s = new Schema("My Schema");
+        Table d = s.createTable("D");
+        Column dk = s.createColumn("K", d);
+        dk.noop(true);
+        d.getData().add();
+        dk.getData().setValue(0, "b");
+
+        Table f = s.createTable("F");
+        Column fv = s.createColumn("V", f);
+        Column fl = s.createColumn("L", f, d);
+        fl.link(new Column[] {fv}, dk);
+
+        long id = f.getData().add();
+        fv.getData().setValue(id, "b");
+        s.evaluate();
+        assertEquals(0L, fl.getData().getValue(0));
+
+        dk.getData().setValue(0, "z"); // Not via table data
+        dk.getData().setChanged(0);
+        id = f.getData().add();
+        fv.getData().setValue(id, "z");
+        s.evaluate();
+        assertEquals(0L, fl.getData().getValue(1));
+        assertTrue(d.getData().getIndexes().contains(java.util.Arrays.asList(dk))); // Created by the link column
+
+        // Old values of keys changed without registering are not found
+        dk.getData().setValue(0, "y");
+        id = f.getData().add();
+        fv.getData().setValue(id, "z");
+        s.evaluate();
+        assertEquals(-1L, fl.getData().getValue(2));
+    }
+
     Schema createSchema() {
         Schema s = new Schema("My Schema");
 
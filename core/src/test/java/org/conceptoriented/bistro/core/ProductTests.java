@@ -162,6 +162,80 @@ public class ProductTests {
         assertEquals(2L, c32.getData().getValue(t3range.start+1));
     }
 
+    @Test
+    public void projIncrementalTest() { // New facts append only missing groups
+        Schema s = createSchema2();
+
+        Table t3 = s.getTable("T3");
+        Table t4 = s.getTable("T4");
+        Column c41 = t4.getColumn("C41");
+        Column c42 = t4.getColumn("C42");
+        Column c43 = t4.getColumn("C43");
+
+        Column c33 = s.createColumn("C33", t3); // Number of facts in each group
+        c33.getData().setDefaultValue(0.0);
+        c33.accumulate(c43, (a,p) -> (Double)a + 1.0, null);
+
+        s.evaluate();
+        assertEquals(3, t3.getData().getLength());
+        long g0 = (Long)c43.getData().getValue(0);
+        long g2 = (Long)c43.getData().getValue(2);
+        assertEquals(2.0, c33.getData().getValue(g2));
+
+        // One new group and one existing group
+        long f4 = t4.getData().add();
+        c41.getData().setValue(f4, 2L); c42.getData().setValue(f4, 1L); // v2, v1
+        long f5 = t4.getData().add();
+        c41.getData().setValue(f5, 2L); c42.getData().setValue(f5, 2L); // v2, v2
+        s.evaluate();
+
+        assertEquals(4, t3.getData().getLength());
+        assertEquals(g0, c43.getData().getValue(0)); // Ids are stable
+        assertEquals(g2, c43.getData().getValue(f5));
+        assertEquals(3L, c43.getData().getValue(f4));
+        assertEquals(3.0, c33.getData().getValue(g2)); // Groups are not reset so accumulation continues
+        assertEquals(1.0, c33.getData().getValue(3L));
+    }
+
+    @Test
+    public void projResetTest() { // If the group table is reset then all facts are accumulated again
+        Schema s = createSchema2();
+
+        Table t3 = s.getTable("T3");
+        Table t4 = s.getTable("T4");
+        Column c31 = t3.getColumn("C31");
+        Column c32 = t3.getColumn("C32");
+        Column c43 = t4.getColumn("C43");
+
+        Column c33 = s.createColumn("C33", t3); // Number of facts in each group
+        c33.getData().setDefaultValue(0.0);
+        c33.accumulate(c43, (a,p) -> (Double)a + 1.0, null);
+        Column c34 = s.createColumn("C34", t3);
+        c34.accumulate(c43, Aggregate.COUNT, t4.getColumn("C41"));
+
+        s.evaluate();
+        Range range = t3.getData().getIdRange();
+        assertEquals(1.0, c33.getData().getValue(range.start));
+        assertEquals(1.0, c33.getData().getValue(range.start + 1));
+        assertEquals(2.0, c33.getData().getValue(range.start + 2));
+
+        // Same definition again resets the group table
+        long definitionChangedAt = c33.getDefinitionChangedAt();
+        c43.project(
+                new Column[] {t4.getColumn("C41"), t4.getColumn("C42")},
+                c31, c32
+        );
+        s.evaluate();
+
+        range = t3.getData().getIdRange();
+        assertEquals(3, range.getLength());
+        assertEquals(1.0, c33.getData().getValue(range.start));
+        assertEquals(1.0, c33.getData().getValue(range.start + 1));
+        assertEquals(2.0, c33.getData().getValue(range.start + 2));
+        assertEquals(2.0, c34.getData().getValue(range.start + 2));
+        assertEquals(definitionChangedAt, c33.getDefinitionChangedAt()); // Reset is signaled by the table data
+    }
+
     Schema createSchema2() {
         Schema s = createSchema();
         Table t3 = s.getTable("T3");
@@ -75,6 +75,219 @@ public class RollTests {
         assertEquals(6.0, t_r.getData().getValue(4));
     }
 
+    @Test
+    public void rollTimestampTest() { // Distances between time stamps are exact nanoseconds
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column t_t = s.createColumn("Time", t, s.getTable("Instant"));
+        Column t_m = s.createColumn("M", t);
+
+        java.time.Instant start = java.time.Instant.parse("2018-01-01T00:00:00.000Z");
+        t.getData().add(10);
+        for(long i=0; i<10; i++) {
+            t_t.getData().setValue(i, start.plusNanos(i * 100));
+            t_m.getData().setValue(i, 1.0);
+        }
+
+        Column t_r = s.createColumn("R", t);
+        t_r.getData().setDefaultValue(0.0);
+        t_r.roll(
+                t_t,
+                150, 0, // (150,0] nanoseconds
+                (a,d,p) -> (Double)a + (Double)p[0],
+                t_m
+        );
+        s.evaluate();
+
+        assertEquals(1.0, t_r.getData().getValue(0));
+        for(long i=1; i<10; i++) {
+            assertEquals(2.0, t_r.getData().getValue(i));
+        }
+    }
+
+    @Test
+    public void rollIncrementalTest() { // Only rows with new elements in their windows are evaluated
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column t_m = s.createColumn("M", t);
+        Column t_d = s.createColumn("D", t);
+
+        // Sum of past elements with a remover and of past and future elements without a remover
+        Column t_r = s.createColumn("R", t);
+        t_r.getData().setDefaultValue(0.0);
+        int[] count = {0};
+        t_r.roll(
+                3, 0,
+                (a,d,p) -> { count[0]++; return (Double)a + (Double)p[0]; },
+                (a,d,p) -> { count[0]++; return (Double)a - (Double)p[0]; },
+                t_m
+        );
+
+        Column t_f = s.createColumn("F", t);
+        t_f.getData().setDefaultValue(0.0);
+        t_f.roll(
+                t_d,
+                2, 1, // (2,1] in units of the distance column
+                (a,d,p) -> (Double)a + (Double)p[0],
+                t_m
+        );
+
+        for(int i=0; i<10; i++) {
+            long id = t.getData().add();
+            t_m.getData().setValue(id, (double)i);
+            t_d.getData().setValue(id, (double)i);
+        }
+        s.evaluate();
+        assertEquals(3.0 + 4.0 + 5.0, t_r.getData().getValue(5));
+        assertEquals(4.0 + 5.0 + 6.0, t_f.getData().getValue(5));
+        assertEquals(8.0 + 9.0, t_f.getData().getValue(9));
+
+        // Added rows continue the window of the previous evaluation
+        count[0] = 0;
+        for(int i=10; i<12; i++) {
+            long id = t.getData().add();
+            t_m.getData().setValue(id, (double)i);
+            t_d.getData().setValue(id, (double)i);
+        }
+        s.evaluate();
+        assertEquals(4, count[0]); // Each row adds one and removes one element
+        assertEquals(9.0 + 10.0 + 11.0, t_r.getData().getValue(11));
+        assertEquals(8.0 + 9.0 + 10.0, t_f.getData().getValue(9)); // Future window of existing row
+        assertEquals(10.0 + 11.0, t_f.getData().getValue(11));
+
+        // Removed rows are excluded from windows
+        t.getData().remove(5);
+        s.evaluate();
+        assertEquals(5.0 + 6.0, t_r.getData().getValue(6));
+        assertEquals(5.0 + 6.0 + 7.0, t_r.getData().getValue(7));
+        assertEquals(5.0 + 6.0, t_f.getData().getValue(5));
+    }
+
+    @Test
+    public void rollDoubleTest() { // Primitive functions are evaluated without boxing
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column t_m = s.createColumn("M", t, td);
+
+        // Moving sum of the last 3 elements
+        Column t_r = s.createColumn("R", t, td);
+        t_r.getData().setDefaultValue(0.0);
+        t_r.roll(
+                3, 0,
+                (EvalRollDouble) (a,d,p) -> a + p[0],
+                (EvalRollDouble) (a,d,p) -> a - p[0],
+                t_m
+        );
+
+        for(int i=0; i<10; i++) {
+            long id = t.getData().add();
+            t_m.getData().setValue(id, (double)i);
+        }
+        s.evaluate();
+        assertEquals(0.0, t_r.getData().getValue(0));
+        assertEquals(3.0 + 4.0 + 5.0, t_r.getData().getValue(5));
+
+        // Added rows continue the window of the previous evaluation
+        long id = t.getData().add();
+        t_m.getData().setValue(id, 10.0);
+        s.evaluate();
+        assertEquals(8.0 + 9.0 + 10.0, t_r.getData().getValue(10));
+    }
+
+    @Test
+    public void rollAggregateTest() { // Built-in aggregates are maintained while the window moves
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column t_m = s.createColumn("M", t);
+
+        Column sum = s.createColumn("Sum", t);
+        sum.roll(3, 0, Aggregate.SUM, t_m);
+        Column mean = s.createColumn("Mean", t);
+        mean.roll(3, 0, Aggregate.MEAN, t_m);
+        Column count = s.createColumn("Count", t);
+        count.roll(3, 0, Aggregate.COUNT, t_m);
+        Column min = s.createColumn("Min", t);
+        min.roll(3, 0, Aggregate.MIN, t_m);
+        Column max = s.createColumn("Max", t);
+        max.roll(3, 0, Aggregate.MAX, t_m);
+        Column first = s.createColumn("First", t);
+        first.roll(3, 0, Aggregate.FIRST, t_m);
+        Column last = s.createColumn("Last", t);
+        last.roll(3, 0, Aggregate.LAST, t_m);
+
+        Double[] values = {5.0, 3.0, null, 8.0, 1.0, 7.0, 2.0};
+        for(Double value : values) {
+            long id = t.getData().add();
+            t_m.getData().setValue(id, value);
+        }
+        s.evaluate();
+
+        assertEquals(8.0, sum.getData().getValue(2));
+        assertEquals(16.0, sum.getData().getValue(5));
+        assertEquals(4.5, mean.getData().getValue(4));
+        assertEquals(2.0, count.getData().getValue(2));
+        assertEquals(3.0, min.getData().getValue(3));
+        assertEquals(1.0, min.getData().getValue(6));
+        assertEquals(5.0, max.getData().getValue(2));
+        assertEquals(8.0, max.getData().getValue(5));
+        assertEquals(7.0, max.getData().getValue(6));
+        assertEquals(8.0, first.getData().getValue(4));
+        assertEquals(3.0, last.getData().getValue(2));
+
+        // Added rows
+        long id = t.getData().add();
+        t_m.getData().setValue(id, 0.0);
+        s.evaluate();
+
+        assertEquals(9.0, sum.getData().getValue(7));
+        assertEquals(0.0, min.getData().getValue(7));
+        assertEquals(7.0, max.getData().getValue(7));
+        assertEquals(7.0, first.getData().getValue(7));
+    }
+
+    @Test
+    public void rollAddRemoveTest() { // Rows are added and removed in the same pass (also more rows than are retained)
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column t_m = s.createColumn("M", t);
+
+        Column t_r = s.createColumn("R", t); // Sliding window
+        t_r.getData().setDefaultValue(0.0);
+        t_r.roll(
+                3, 0,
+                (a,d,p) -> (Double)a + (Double)p[0],
+                (a,d,p) -> (Double)a - (Double)p[0],
+                t_m
+        );
+        Column t_f = s.createColumn("F", t); // Full window
+        t_f.getData().setDefaultValue(0.0);
+        t_f.roll(
+                3, 0,
+                (a,d,p) -> (Double)a + (Double)p[0],
+                t_m
+        );
+
+        int[] bursts = {4, 1, 7, 2, 5, 1, 3};
+        int retained = 4;
+        for(int burst : bursts) {
+            for(int k=0; k<burst; k++) {
+                long id = t.getData().add();
+                t_m.getData().setValue(id, (double)(id * id));
+            }
+            t.getData().remove(Math.max(0, t.getData().getLength() - retained));
+            s.evaluate();
+
+            Range range = t.getData().getIdRange();
+            for(long i=range.start; i<range.end; i++) {
+                double expected = 0.0;
+                for(long j=Math.max(range.start, i - 2); j<=i; j++) expected += (double)(j * j);
+                assertEquals(expected, t_r.getData().getValue(i));
+                assertEquals(expected, t_f.getData().getValue(i));
+            }
+        }
+    }
+
     Schema createSchema() {
 
         Schema schema = new Schema("My Schema");
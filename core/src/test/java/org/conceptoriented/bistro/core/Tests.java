@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class Tests {
@@ -37,7 +38,7 @@ public class Tests {
         assertEquals(2, t.getColumns().size());
 
         s.deleteTable(t);
-        assertEquals(1, s.getTables().size()); // Only primitive tables
+        assertEquals(2, s.getTables().size()); // Only primitive tables (Object and Instant)
     }
 
     @Test
@@ -80,6 +81,48 @@ public class Tests {
         assertTrue(found_id < 0);
     }
 
+    @Test
+    public void indexTest() { // Search using hash index
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column c1 = s.createColumn("C1", t);
+        Column c2 = s.createColumn("C2", t);
+        List<Column> cols = Arrays.asList(c1, c2);
+
+        t.getData().createIndex(cols);
+
+        t.getData().add(3);
+        t.getData().setValues(0, cols, Arrays.asList(1.0, "a"));
+        t.getData().setValues(1, cols, Arrays.asList(2.0, "b"));
+        c1.getData().setValue(2, 1.0); c2.getData().setValue(2, "a"); // Duplicate set directly for a new record
+
+        assertEquals(0, t.getData().findValues(Arrays.asList(1.0, "a"), cols)); // The first duplicate is found as by scanning
+        assertEquals(1, t.getData().findValues(Arrays.asList(2.0, "b"), cols));
+        assertTrue(t.getData().findValues(Arrays.asList(3.0, "c"), cols) < 0);
+
+        // Change values of an existing record
+        t.getData().setValues(1, cols, Arrays.asList(3.0, "c"));
+        assertEquals(1, t.getData().findValues(Arrays.asList(3.0, "c"), cols));
+        assertTrue(t.getData().findValues(Arrays.asList(2.0, "b"), cols) < 0);
+        t.getData().setValues(0, cols, Arrays.asList(4.0, "d"));
+        assertEquals(2, t.getData().findValues(Arrays.asList(1.0, "a"), cols)); // Younger duplicate is found
+        t.getData().setValues(0, cols, Arrays.asList(1.0, "a"));
+        t.getData().setValues(2, cols, Arrays.asList(4.0, "d"));
+        assertEquals(0, t.getData().findValues(Arrays.asList(1.0, "a"), cols));
+
+        // Removed records are not found
+        t.getData().remove(2);
+        assertTrue(t.getData().findValues(Arrays.asList(1.0, "a"), cols) < 0);
+        assertTrue(t.getData().findValues(Arrays.asList(3.0, "c"), cols) < 0);
+        assertEquals(2, t.getData().findValues(Arrays.asList(4.0, "d"), cols));
+
+        // Younger duplicates are found after the first record has been removed
+        t.getData().add();
+        c1.getData().setValue(3, 4.0); c2.getData().setValue(3, "d");
+        t.getData().remove(1);
+        assertEquals(3, t.getData().findValues(Arrays.asList(4.0, "d"), cols));
+    }
+
     @Test
     public void removeTest() { // Rest deletion operations
 
@@ -135,4 +178,173 @@ public class Tests {
 
     }
 
+    @Test
+    public void parallelTest() { // Elements of one layer are evaluated in parallel
+        Schema s = new Schema("My Schema");
+        s.setExecutor(new java.util.concurrent.ForkJoinPool(4));
+
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column[] cols = new Column[20];
+        for(int i=0; i<cols.length; i++) {
+            final double k = i;
+            cols[i] = s.createColumn("C" + i, t);
+            cols[i].calculate(p -> (double)p[0] * k, a);
+        }
+        Column sum = s.createColumn("Sum", t); // Next layer
+        sum.calculate(p -> { double r = 0; for(int i=0; i<cols.length; i++) r += (double)p[i]; return r; }, cols);
+
+        // Link columns to the same table using one index
+        Table t2 = s.createTable("T2");
+        Column b = s.createColumn("B", t2);
+        Column l1 = s.createColumn("L1", t2, t);
+        l1.link(new Column[] {b}, a);
+        Column l2 = s.createColumn("L2", t2, t);
+        l2.link(new Column[] {b}, a);
+
+        t.getData().add(1000);
+        t2.getData().add(1000);
+        for(long i=0; i<1000; i++) {
+            a.getData().setValue(i, (double)i);
+            b.getData().setValue(i, (double)(999 - i));
+        }
+
+        s.evaluate();
+
+        assertEquals(190.0 * 500, sum.getData().getValue(500));
+        assertEquals(19.0 * 999, cols[19].getData().getValue(999));
+        assertEquals(999L, l1.getData().getValue(0));
+        assertEquals(0L, l2.getData().getValue(999));
+    }
+
+    @Test
+    public void topologyTest() { // Layers are updated incrementally
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column b = s.createColumn("B", t);
+        Column c = s.createColumn("C", t);
+
+        b.calculate(p -> p[0], a);
+        c.calculate(p -> p[0], b);
+        assertEquals(2, (int)s.topology.levels.get(c));
+
+        // Redefinition changes layers of dependents
+        c.calculate(p -> p[0], a);
+        assertEquals(1, (int)s.topology.levels.get(c));
+        assertEquals(2, s.topology.layers.size());
+
+        c.calculate(p -> p[0], b);
+        assertEquals(3, s.topology.layers.size());
+
+        // Cyclic definitions are rejected
+        try {
+            b.calculate(p -> p[0], c);
+        }
+        catch(BistroException e) {}
+        assertEquals(0, (int)s.topology.levels.get(b)); // Noop
+        assertEquals(1, (int)s.topology.levels.get(c));
+
+        // Incremental topology is equal to a new one
+        Topology full = new Topology(s);
+        full.create();
+        assertEquals(full.levels, s.topology.levels);
+
+        // Dependents of deleted elements cannot be evaluated
+        b.calculate(p -> p[0], a);
+        s.deleteColumn(b);
+        assertEquals(-1, (int)s.topology.levels.get(c));
+        assertEquals(1, s.topology.layers.size());
+    }
+
+    @Test
+    public void dependentsTest() { // Dependents are found using reverse edges
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column b = s.createColumn("B", t);
+        Column c = s.createColumn("C", t);
+        Column d = s.createColumn("D", t);
+
+        b.calculate(p -> p[0], a);
+        c.calculate(p -> p[0], a);
+        d.calculate(p -> p[0], b);
+
+        assertEquals(Arrays.asList(b, c), a.getDependents());
+        assertTrue(a.hasDependents(d));
+        assertFalse(c.hasDependents(d));
+        assertEquals(3, s.topology.getDownstream(a).size());
+
+        // Redefinition updates reverse edges
+        d.calculate(p -> p[0], c);
+        assertEquals(0, b.getDependents().size());
+        assertTrue(c.hasDependents(d));
+
+        // Downstream elements cannot become dependencies
+        try {
+            a.calculate(p -> p[0], d);
+        }
+        catch(BistroException e) {}
+        assertEquals(OperationType.NOOP, a.getOperationType());
+        assertEquals(2, a.getDependents().size());
+    }
+
+    @Test
+    public void catalogTest() { // Lookup of tables and columns by names and ids
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column b = s.createColumn("B", t);
+
+        assertEquals(t, s.getTableById(t.getId().toString()));
+        assertEquals(b, s.getColumnById(b.getId().toString()));
+        assertEquals(null, s.getTableById(b.getId().toString()));
+        assertEquals(Arrays.asList(a, b), t.getColumns());
+
+        // Renaming and moving elements
+        t.setName("T2");
+        a.setName("A2");
+        assertEquals(null, s.getTable("T"));
+        assertEquals(a, s.getColumn("T2", "A2"));
+
+        Table t3 = s.createTable("T3");
+        b.setInput(t3);
+        assertEquals(1, t.getColumns().size());
+        assertEquals(b, t3.getColumn("B"));
+
+        // Deleting elements
+        s.deleteColumn(a);
+        assertEquals(0, t.getColumns().size());
+        assertEquals(null, s.getColumnById(a.getId().toString()));
+        s.deleteTable(t3);
+        assertEquals(null, s.getColumn("T3", "B"));
+    }
+
+    @Test
+    public void diamondTest() { // Dirtiness and errors are propagated along a chain of diamonds
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column prev = s.createColumn("C0", t);
+        prev.calculate(p -> { if(p[0] == null) throw new IllegalArgumentException("No value"); return p[0]; }, a);
+        for(int i=1; i<=30; i++) {
+            Column left = s.createColumn("L" + i, t);
+            left.calculate(p -> p[0], prev);
+            Column right = s.createColumn("R" + i, t);
+            right.calculate(p -> p[0], prev);
+            prev = s.createColumn("C" + i, t);
+            prev.calculate(p -> (double)p[0] + (double)p[1], left, right);
+        }
+
+        t.getData().add();
+        s.evaluate();
+        assertEquals(1, s.getColumn("T", "C0").getErrors().size());
+        assertTrue(prev.hasErrorsDeep());
+
+        a.getData().setValue(0, 1.0);
+        s.evaluate();
+        assertEquals(0, s.getColumn("T", "C0").getErrors().size());
+        assertEquals(Math.pow(2, 30), (double)prev.getData().getValue(0), 0.0);
+    }
+
 }
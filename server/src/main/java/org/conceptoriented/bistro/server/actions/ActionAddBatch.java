@@ -0,0 +1,30 @@
+package org.conceptoriented.bistro.server.actions;
+
+import org.conceptoriented.bistro.core.*;
+import org.conceptoriented.bistro.server.*;
+
+import java.util.List;
+
+/**
+ * Add a batch of records to a table.
+ * Records are given in columnar form, that is, as one array of values (double[], long[], int[] or Object[]) for each column.
+ */
+public class ActionAddBatch implements Action {
+
+    protected Table table;
+    protected int count;
+    protected List<Column> columns;
+    protected List<Object> values;
+
+    @Override
+    public void evaluate(Context ctx) {
+        this.table.getData().add(this.count, this.columns, this.values);
+    }
+
+    public ActionAddBatch(Table table, int count, List<Column> columns, List<Object> values) {
+        this.table = table;
+        this.count = count;
+        this.columns = columns;
+        this.values = values;
+    }
+}
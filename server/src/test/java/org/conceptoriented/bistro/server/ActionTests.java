@@ -4,6 +4,7 @@ import org.conceptoriented.bistro.core.Column;
 import org.conceptoriented.bistro.core.Schema;
 import org.conceptoriented.bistro.core.Table;
 import org.conceptoriented.bistro.server.actions.ActionAdd;
+import org.conceptoriented.bistro.server.actions.ActionAddBatch;
 import org.conceptoriented.bistro.server.actions.ActionRemove;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -11,6 +12,7 @@ import org.junit.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -87,4 +89,31 @@ public class ActionTests {
 
         assertEquals(2, t.getData().getLength()); // Two record was deleted
     }
+
+    @Test
+    public void actionAddBatchTest() throws InterruptedException {
+        Schema s = new Schema("My Schema");
+        Table td = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, td);
+        Column tb = s.createColumn("B", t);
+
+        Server server = new Server(s);
+        server.start();
+
+        // Records are passed as arrays of column values
+        server.submit(new ActionAddBatch(t, 3, Arrays.asList(ta, tb), Arrays.asList(new double[] {1.0, 2.0, Double.NaN}, new Object[] {"a", "b", "c"})));
+        server.submit(new ActionAddBatch(t, 2, Arrays.asList(ta), Arrays.asList(new double[] {4.0, 5.0})));
+
+        Thread.sleep(50); // Give some time to the server to process actions
+
+        assertEquals(5, t.getData().getLength());
+        assertEquals(2.0, ta.getData().getValue(1));
+        assertEquals(null, ta.getData().getValue(2));
+        assertEquals("c", tb.getData().getValue(2));
+        assertEquals(5.0, ta.getData().getValue(4));
+        assertEquals(null, tb.getData().getValue(4));
+
+        server.stop();
+    }
 }